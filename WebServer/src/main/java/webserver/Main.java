@@ -1,11 +1,12 @@
 package webserver;
 
 import io.vertx.core.DeploymentOptions;
-import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import webserver.fhemParser.FHEMParser;
+import webserver.fhemParser.PollScheduler;
 import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemUtils.FHEMUtils;
 
 import java.util.Optional;
 
@@ -32,9 +33,21 @@ public final class Main {
      */
     static final FHEMParser PARSER = FHEMParser.getInstance();
     /**
-     * The ID of the timer which periodically refreshes the fhem model.
+     * The scheduler which periodically refreshes the fhem model.
      */
-    static long parserTimerID;
+    static volatile PollScheduler poller;
+    /**
+     * The bounds of the interval in which the fhem model is parsed if it is not updated by events, in milliseconds.
+     * They can be set with the global variables FHEMPOLLMIN and FHEMPOLLMAX.
+     */
+    private static final long MIN_POLL_INTERVAL = 5 * 1000;
+    private static final long MAX_POLL_INTERVAL = 60 * 1000;
+    /**
+     * The bounds of the interval in which the fhem model is parsed if it is updated by events, in milliseconds.
+     * Catches up on everything the inform stream does not carry, like changed log files.
+     */
+    private static final long MIN_RECONCILE_INTERVAL = 60 * 1000;
+    private static final long MAX_RECONCILE_INTERVAL = 5 * 60 * 1000;
 
     static {
         Optional<FHEMModel> fhemModel_opt = PARSER.getFHEMModel();
@@ -55,26 +68,31 @@ public final class Main {
             defaultPORT = Integer.parseInt(args[0]);
         }
         JsonObject config = new JsonObject().put("PORT", defaultPORT).put("HOST", "localhost");
-        DeploymentOptions options = new DeploymentOptions().setConfig(config);
+        /* one server instance per core, they share the http port and their state */
+        DeploymentOptions options = new DeploymentOptions().setConfig(config)
+                .setInstances(Runtime.getRuntime().availableProcessors());
         VERTX.deployVerticle(Server.class.getCanonicalName(), options);
 
-        parserTimerID = VERTX.setPeriodic(5000, id -> {
-            VERTX.executeBlocking(future -> {
-                Optional<FHEMModel> fhemModel_opt = PARSER.getFHEMModel();
-                if (!fhemModel_opt.isPresent()) {
-                    System.err.println("FHEM could not parsed.");
-                    future.handle(Future.failedFuture(future.cause()));
-                } else {
-                    future.complete(fhemModel_opt.get());
-                }
-            }, res -> {
-                if (!res.succeeded()) {
-                    System.err.println("System exiting: Periodic Parser returned with error!");
-                    res.cause().printStackTrace();
-                    VERTX.cancelTimer(parserTimerID);
-                    VERTX.close();
-                }
-            });
+        /* before the poller is started, there is no need for an early poll: the first tick polls anyway */
+        final boolean events = PARSER.subscribeToEvents(() -> {
+            final PollScheduler scheduler = poller;
+            if (scheduler != null) {
+                scheduler.requestPoll();
+            }
         });
+        final long minInterval = FHEMUtils.getGlobVar("FHEMPOLLMIN").filter(min -> min.matches("\\d+"))
+                .map(Long::parseLong).orElse(events ? MIN_RECONCILE_INTERVAL : MIN_POLL_INTERVAL);
+        final long maxInterval = FHEMUtils.getGlobVar("FHEMPOLLMAX").filter(max -> max.matches("\\d+"))
+                .map(Long::parseLong).orElse(events ? MAX_RECONCILE_INTERVAL : MAX_POLL_INTERVAL);
+        poller = new PollScheduler(VERTX, minInterval, maxInterval, () -> {
+            Optional<Boolean> changed_opt = PARSER.pollForChanges();
+            if (!changed_opt.isPresent()) {
+                System.err.println("FHEM could not parsed.");
+            }
+            return changed_opt;
+        }, () -> {
+            System.err.println("System exiting: Periodic Parser returned with error!");
+            VERTX.close();
+        }).start();
     }
 }
@@ -1,28 +1,56 @@
 package webserver;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import io.vertx.core.*;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
 import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
 import io.vertx.ext.auth.User;
 import io.vertx.ext.auth.jdbc.JDBCAuth;
 import io.vertx.ext.jdbc.JDBCClient;
 import io.vertx.ext.sql.ResultSet;
-import io.vertx.ext.sql.SQLConnection;
+import io.vertx.ext.sql.UpdateResult;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.AuthHandler;
 import io.vertx.ext.web.handler.BasicAuthHandler;
 import io.vertx.ext.web.handler.BodyHandler;
 import webserver.fhemParser.FHEMParser;
+import webserver.fhemParser.SensorPosition;
+import webserver.fhemParser.SerializedModel;
+import webserver.fhemParser.fhemModel.ModelChange;
+import webserver.fhemParser.fhemModel.serializers.ModelChangeSerializer;
+import webserver.serverUtils.ChunkedResponseStream;
+import webserver.serverUtils.CompressedPayloadCache;
+import webserver.serverUtils.ModelEventStream;
+import webserver.userData.ConnectionPool;
+import webserver.userData.PermissionCache;
+import webserver.userData.SessionStore;
+import webserver.userData.SessionUser;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Serves a stateless REST-Api secured with BasicAuth and backed with JDBC.
+ * After a login, session tokens can be used instead of BasicAuth.
  * Handles user permissions for different actions.
  *
  * @author Johannes Köstler (github@johanneskoestler.de)
@@ -44,6 +72,11 @@ public class Server extends AbstractVerticle {
     private static final int Unauthorized_HTTP_CODE = 401;
     private static final int Unavailable_HTTP_CODE = 503;
     private static final String ContentType_HEADER = "content-type";
+    private static final String ETag_HEADER = "ETag";
+    private static final String IfNoneMatch_HEADER = "If-None-Match";
+    private static final String AcceptEncoding_HEADER = "Accept-Encoding";
+    private static final String ContentEncoding_HEADER = "Content-Encoding";
+    private static final String Vary_HEADER = "Vary";
     private static final String MutexID_HEADER = "mutexID";
     private static final String ContentType_VALUE = "application/json";
     private static final String Edit_PERMISSION = "E_Änderung";
@@ -53,6 +86,7 @@ public class Server extends AbstractVerticle {
     private static final String Password_PARAM = "password";
     private static final String Prename_PARAM = "prename";
     private static final String Surname_PARAM = "surname";
+    private static final String Token_FIELD = "token";
     private static final String Room_PARAM = "room";
     private static final String SensorName_PARAM = "sensorname";
     private static final String State_PARAM = "state";
@@ -62,40 +96,105 @@ public class Server extends AbstractVerticle {
     private static final String Id_PARAM = "ID";
     private static final String startTime_PARAM = "startTime";
     private static final String endTime_PARAM = "endTime";
+    private static final String Since_PARAM = "since";
+    private static final String Generation_HEADER = "generation";
+    private static final String Delta_HEADER = "delta";
+    private static final String State_HEADER = "state";
     private static final String newPassword_HEADER = "rawpw";
+    private static final String Authorization_HEADER = "Authorization";
+    private static final String Bearer_PREFIX = "Bearer ";
+    private static final String PermissionCacheTTL_CONFIG = "PERMISSION_CACHE_TTL";
+    private static final String PermissionCacheSize_CONFIG = "PERMISSION_CACHE_SIZE";
+    private static final long DEFAULT_PERMISSION_CACHE_TTL = 60 * 1000;
+    private static final int DEFAULT_PERMISSION_CACHE_SIZE = 1000;
+    private static final String SessionTTL_CONFIG = "SESSION_TTL";
+    private static final long DEFAULT_SESSION_TTL = 24 * 60 * 60 * 1000;
+    private static final long SESSION_PURGE_INTERVAL = 10 * 60 * 1000;
+    private static final String DatabasePoolSize_CONFIG = "DB_POOL_SIZE";
+    private static final String DatabaseAcquireTimeout_CONFIG = "DB_ACQUIRE_TIMEOUT";
+    private static final int DEFAULT_DATABASE_POOL_SIZE = 10;
+    private static final long DEFAULT_DATABASE_ACQUIRE_TIMEOUT = 5 * 1000;
+    /* in seconds, idle connections are dropped before the mysql server times them out */
+    private static final int DATABASE_MAX_IDLE_TIME = 15 * 60;
+    private static final String SharedState_MAP = "webserver.Server";
+    private static final String PermissionCache_SHARED = "permissionCache";
+    private static final String SessionStore_SHARED = "sessionStore";
+    private static final String PoolStatistics_SHARED = "poolStatistics";
+    private static final String CompressedPayloads_SHARED = "compressedPayloads";
+    /* tells all instances to end the event streams of a user, whose session or permissions changed */
+    private static final String EndModelEvents_ADDRESS = "webserver.Server.endModelEvents";
+    private static final String CompressionCacheSize_CONFIG = "COMPRESSION_CACHE_SIZE";
+    private static final int DEFAULT_COMPRESSION_CACHE_SIZE = 64;
+    /* in bytes, smaller bodies are not worth compressing */
+    private static final int COMPRESSION_MIN_SIZE = 1024;
+    /* in bytes, larger bodies are streamed in chunks of this size */
+    private static final int RESPONSE_CHUNK_SIZE = 16 * 1024;
+    private static final long EVENT_STREAM_HEARTBEAT = 30 * 1000;
+    private static final String Database_NAME = "fhem_userdata";
     private final FHEMParser parser = Main.PARSER;
-    @SuppressWarnings("FieldCanBeLocal")
-    private final int DATABASE_KEEP_ALIVE = 15 * 60 * 1000;
     private JDBCAuth authProvider;
     private Router router;
     private HttpServer server;
-    private SQLConnection connection;
-    private JDBCClient jdbcClient;
-    private long TimerofMutexID = 0;
-    private long DatabaseAliveTimer = 0;
+    private ConnectionPool connectionPool;
+    private ConnectionPool.Statistics poolStatistics;
+    private PermissionCache permissionCache;
+    private SessionStore sessionStore;
+    private CompressedPayloadCache compressedPayloads;
+    private ModelEventStream modelEvents;
+    private MessageConsumer<JsonObject> endModelEventsConsumer;
+    private Consumer<ModelChange> modelListener;
+    private long SessionPurgeTimer = 0;
+    private long EventStreamHeartbeatTimer = 0;
 
     @Override
     public void start(Future<Void> startFuture) throws Exception {
-        /* Authentication */
+        /* Authentication, the database pool and the caches are shared by all instances of this verticle */
+        final int poolSize = config().getInteger(DatabasePoolSize_CONFIG, DEFAULT_DATABASE_POOL_SIZE);
         JsonObject jdbcClientConfig = new JsonObject()
                 .put("url", "jdbc:mysql://localhost:3306/fhem_userdata?useSSL=false")
                 .put("driver_class", "com.mysql.cj.jdbc.Driver")
                 .put("user", "java")
-                .put("password", "ialsevlhdakkyllosnmnilk");
-        jdbcClient = JDBCClient.createNonShared(vertx, jdbcClientConfig);
-        authProvider = JDBCAuth.create(vertx, jdbcClient);
+                .put("password", "ialsevlhdakkyllosnmnilk")
+                .put("max_pool_size", poolSize)
+                .put("max_idle_time", DATABASE_MAX_IDLE_TIME);
+        poolStatistics = getShared(PoolStatistics_SHARED, () -> new ConnectionPool.Statistics(poolSize));
+        connectionPool = new ConnectionPool(vertx, JDBCClient.createShared(vertx, jdbcClientConfig, Database_NAME),
+                config().getLong(DatabaseAcquireTimeout_CONFIG, DEFAULT_DATABASE_ACQUIRE_TIMEOUT), poolStatistics);
+        authProvider = JDBCAuth.create(vertx, connectionPool.getClient());
         AuthHandler authHandler = BasicAuthHandler.create(authProvider);
+        permissionCache = getShared(PermissionCache_SHARED, () -> new PermissionCache(
+                config().getLong(PermissionCacheTTL_CONFIG, DEFAULT_PERMISSION_CACHE_TTL),
+                config().getInteger(PermissionCacheSize_CONFIG, DEFAULT_PERMISSION_CACHE_SIZE)));
+        sessionStore = getShared(SessionStore_SHARED,
+                () -> new SessionStore(config().getLong(SessionTTL_CONFIG, DEFAULT_SESSION_TTL)));
+        compressedPayloads = getShared(CompressedPayloads_SHARED, () -> new CompressedPayloadCache(
+                config().getInteger(CompressionCacheSize_CONFIG, DEFAULT_COMPRESSION_CACHE_SIZE)));
+        SessionPurgeTimer = vertx.setPeriodic(SESSION_PURGE_INTERVAL, id -> sessionStore.purgeExpired());
 
-        /* Database  */
-        Future<SQLConnection> databaseFuture = Future.future();
-        jdbcClient.getConnection(databaseFuture.completer());
+        /* Model updates, pushed to the subscribers of this instance on its own event loop */
+        modelEvents = new ModelEventStream(vertx);
+        final Context context = vertx.getOrCreateContext();
+        modelListener = change -> context.runOnContext(v -> modelEvents.publish(change));
+        parser.addModelListener(modelListener);
+        EventStreamHeartbeatTimer = vertx.setPeriodic(EVENT_STREAM_HEARTBEAT,
+                id -> modelEvents.heartbeat(token -> sessionStore.getUsername(token).isPresent()));
+        endModelEventsConsumer = vertx.eventBus().<JsonObject>consumer(EndModelEvents_ADDRESS, message ->
+                modelEvents.end(message.body().getString(Username_PARAM), message.body().getString(Token_FIELD)));
+
+        /* Database, check that it is reachable  */
+        Future<Void> databaseFuture = Future.future();
+        connectionPool.<Void>execute((connection, done) -> done.handle(Future.succeededFuture()),
+                databaseFuture.completer());
 
         /* Routing */
         router = Router.router(getVertx());
         router.exceptionHandler(this::exceptionHandler);
         router.route().handler(BodyHandler.create());
+        router.route("/api/*").handler(this::tokenAuthentication);
         router.route("/api/*").handler(authHandler);
         router.route(HttpMethod.POST, "/register").handler(this::register);
+        router.route(HttpMethod.GET, "/api/user/login").handler(this::login);
+        router.route(HttpMethod.GET, "/api/user/logout").handler(this::logout);
         router.route(HttpMethod.GET, "/api/user/list").handler(this::getUserlist);
         router.route(HttpMethod.GET, "/api/user/permissions").handler(this::getPermissions);
         router.route(HttpMethod.GET, "/api/user/groups/add").handler(this::addGroupsForUser);
@@ -103,13 +202,17 @@ public class Server extends AbstractVerticle {
         router.route(HttpMethod.GET, "/api/user/password").handler(this::updatePassword);
         router.route(HttpMethod.GET, "/api/user/delete").handler(this::deleteAccount);
         router.route(HttpMethod.GET, "/api/model").handler(this::getModel);
+        router.route(HttpMethod.GET, "/api/model/delta").handler(this::getModelDelta);
+        router.route(HttpMethod.GET, "/api/model/events").handler(this::subscribeModelEvents);
         router.route(HttpMethod.GET, "/api/model/sensor/position").handler(this::setSensorPosition);
+        router.route(HttpMethod.POST, "/api/model/sensor/positions").handler(this::setSensorPositions);
         router.route(HttpMethod.GET, "/api/model/actuator/toggle").handler(this::setActuator);
         router.route(HttpMethod.GET, "/api/model/timeseries").handler(this::getTimeSeries);
         router.route(HttpMethod.GET, "/api/model/roomplan").handler(this::getRoomplan);
         router.route(HttpMethod.POST, "/api/model/roomplan").handler(this::setRoomplan);
         router.route(HttpMethod.GET, "/api/mutex/get").handler(this::getEditMutex);
         router.route(HttpMethod.GET, "/api/mutex/release").handler(this::releaseEditMutex);
+        router.route(HttpMethod.GET, "/api/metrics").handler(this::getMetrics);
 
         /* Server */
         server = getVertx().createHttpServer();
@@ -123,34 +226,12 @@ public class Server extends AbstractVerticle {
                 startFuture.fail(res.cause());
                 System.exit(34);
             } else {
-                connection = res.result().resultAt(0);
                 startFuture.complete();
                 System.out.println("Server started successfully!");
-                databaseKeepAlive();
             }
         });
     }
 
-    private void databaseKeepAlive() {
-        DatabaseAliveTimer = vertx.setPeriodic(DATABASE_KEEP_ALIVE, id -> {
-            getListOfPermissions("noperms", res -> {
-                if (!res.succeeded()) {
-                    System.err.println("database connection died, trying to reconnect!");
-                    /* reconnect Database  */
-                    jdbcClient.getConnection(res2 -> {
-                        if (res2.failed()) {
-                            System.err.println("database seems offline, exiting!");
-                            System.exit(12);
-                        } else {
-                            System.out.println("database successfully reconnected");
-                            connection = res2.result();
-                        }
-                    });
-                }
-            });
-        });
-    }
-
     /**
      * updates an users password in the database
      *
@@ -168,7 +249,7 @@ public class Server extends AbstractVerticle {
         final String hash = authProvider.computeHash(newPassword, salt);
 
         final JsonArray params = new JsonArray().add(hash).add(salt).add(username);
-        connection.updateWithParams(query, params, res -> {
+        connectionPool.<UpdateResult>execute((connection, done) -> connection.updateWithParams(query, params, done), res -> {
             if (res.succeeded()) {
                 next.handle(Future.succeededFuture());
             } else {
@@ -178,20 +259,46 @@ public class Server extends AbstractVerticle {
         });
     }
 
+    /**
+     * lists all permissions an user has to a List&lt;String&gt;
+     * answers from the permission cache if possible, queries the database otherwise
+     *
+     * @param username the username (email)
+     * @param next     Handler which gets called, whenever the permissions are available
+     */
+    private void getListOfPermissions(String username, Handler<AsyncResult<List<String>>> next) {
+        if (username == null) {
+            next.handle(Future.failedFuture(new IllegalArgumentException("no username specified")));
+            return;
+        }
+        final Optional<List<String>> cached = permissionCache.getPermissions(username);
+        if (cached.isPresent()) {
+            next.handle(Future.succeededFuture(cached.get()));
+            return;
+        }
+        final long epoch = permissionCache.getEpoch();
+        queryListOfPermissions(username, res -> {
+            if (res.succeeded()) {
+                permissionCache.putPermissions(username, res.result(), epoch);
+            }
+            next.handle(res);
+        });
+    }
+
     /**
      * lists all permissions an user has from the database to a List&lt;String&gt;
      *
      * @param username the username (email)
      * @param next     Handler which gets called, whenever the database action has been finished
      */
-    private void getListOfPermissions(String username, Handler<AsyncResult<List<String>>> next) {
+    private void queryListOfPermissions(String username, Handler<AsyncResult<List<String>>> next) {
         if (username == null) {
             next.handle(Future.failedFuture(new IllegalArgumentException("no username specified")));
             return;
         }
         final String query = "SELECT perm FROM `ROLE_PERM` INNER JOIN `USER_ROLE` ON `ROLE_PERM`.role=`USER_ROLE`.role where `user`=?";
         final JsonArray params = new JsonArray().add(username);
-        connection.queryWithParams(query, params, res -> {
+        connectionPool.<ResultSet>execute((connection, done) -> connection.queryWithParams(query, params, done), res -> {
             if (res.succeeded()) {
                 final ResultSet result = res.result();
                 final List<String> list = result.getRows().stream().map(obj -> obj.getString("perm")).collect(Collectors.toList());
@@ -202,20 +309,46 @@ public class Server extends AbstractVerticle {
         });
     }
 
+    /**
+     * lists all groups an user is participant to a List&lt;String&gt;
+     * answers from the permission cache if possible, queries the database otherwise
+     *
+     * @param username the username (email)
+     * @param next     Handler which gets called, whenever the groups are available
+     */
+    private void getListOfGroups(String username, Handler<AsyncResult<List<String>>> next) {
+        if (username == null) {
+            next.handle(Future.failedFuture(new IllegalArgumentException("no username specified")));
+            return;
+        }
+        final Optional<List<String>> cached = permissionCache.getGroups(username);
+        if (cached.isPresent()) {
+            next.handle(Future.succeededFuture(cached.get()));
+            return;
+        }
+        final long epoch = permissionCache.getEpoch();
+        queryListOfGroups(username, res -> {
+            if (res.succeeded()) {
+                permissionCache.putGroups(username, res.result(), epoch);
+            }
+            next.handle(res);
+        });
+    }
+
     /**
      * lists all groups an user is participant from the database to a List&lt;String&gt;
      *
      * @param username the username (email)
      * @param next     Handler which gets called, whenever the database action has been finished
      */
-    private void getListOfGroups(String username, Handler<AsyncResult<List<String>>> next) {
+    private void queryListOfGroups(String username, Handler<AsyncResult<List<String>>> next) {
         if (username == null) {
             next.handle(Future.failedFuture(new IllegalArgumentException("no username specified")));
             return;
         }
         final String query = "SELECT role FROM `USER_ROLE` WHERE `user`=?";
         final JsonArray params = new JsonArray().add(username);
-        connection.queryWithParams(query, params, res -> {
+        connectionPool.<ResultSet>execute((connection, done) -> connection.queryWithParams(query, params, done), res -> {
             if (res.succeeded()) {
                 final ResultSet result = res.result();
                 final List<String> list = result.getRows().stream().map(obj -> obj.getString("role")).collect(Collectors.toList());
@@ -233,7 +366,7 @@ public class Server extends AbstractVerticle {
      */
     private void getListOfUsers(Handler<AsyncResult<List>> next) {
         final String query = "SELECT prename,surname,username FROM `USER`";
-        connection.query(query, res -> {
+        connectionPool.<ResultSet>execute((connection, done) -> connection.query(query, done), res -> {
             if (res.succeeded()) {
                 final ResultSet result = res.result();
                 List<Object> table = new ArrayList<>();
@@ -247,10 +380,16 @@ public class Server extends AbstractVerticle {
 
     @Override
     public void stop() {
-        vertx.cancelTimer(Main.parserTimerID);
-        vertx.cancelTimer(DatabaseAliveTimer);
+        if (Main.poller != null) {
+            Main.poller.stop();
+        }
+        vertx.cancelTimer(SessionPurgeTimer);
+        vertx.cancelTimer(EventStreamHeartbeatTimer);
+        parser.removeModelListener(modelListener);
+        endModelEventsConsumer.unregister();
+        modelEvents.close();
         router.clear();
-        connection.close();
+        /* the shared database client is closed by vertx, once the last instance is undeployed */
         server.close();
         try {
             super.stop();
@@ -263,6 +402,307 @@ public class Server extends AbstractVerticle {
         throwable.printStackTrace();
     }
 
+    /**
+     * answers a request with a Json body, compressed if the client accepts it
+     * compressed bodies of cacheable payloads are kept, so every payload is compressed only once
+     *
+     * @param routingContext the context in a route given by the router
+     * @param body           the Json body
+     * @param cacheKey       identifies the content of the body, e.g. its entity tag; null if it should not be cached
+     */
+    private void endJson(RoutingContext routingContext, String body, String cacheKey) {
+        if (body.length() < COMPRESSION_MIN_SIZE) {
+            routingContext.response().setStatusCode(OK_HTTP_CODE)
+                    .putHeader(ContentType_HEADER, ContentType_VALUE)
+                    .putHeader(Vary_HEADER, AcceptEncoding_HEADER)
+                    .end(body);
+            return;
+        }
+        streamJson(routingContext, cacheKey, writer -> {
+            /* in slices, so the writer does not copy the whole body at once */
+            for (int offset = 0; offset < body.length(); offset += RESPONSE_CHUNK_SIZE) {
+                writer.write(body, offset, Math.min(RESPONSE_CHUNK_SIZE, body.length() - offset));
+            }
+            return true;
+        });
+    }
+
+    /**
+     * answers a request with a Json body which is written on a worker thread into a chunked response,
+     * compressed on the fly if the client accepts it
+     * only a few chunks of the body are held in memory at a time
+     * compressed bodies of cacheable payloads are kept, so every payload is compressed only once
+     * an ETag which was set before is suffixed with the content coding of a compressed body
+     * if the body cannot be written before anything was sent, the request is answered with an error
+     *
+     * @param routingContext the context in a route given by the router
+     * @param cacheKey       identifies the content of the body, e.g. its entity tag; null if it should not be cached
+     * @param bodyWriter     writes the Json body, returns false if there is nothing to write
+     */
+    private void streamJson(RoutingContext routingContext, String cacheKey, JsonBodyWriter bodyWriter) {
+        final HttpServerResponse response = routingContext.response().setStatusCode(OK_HTTP_CODE)
+                .putHeader(ContentType_HEADER, ContentType_VALUE)
+                .putHeader(Vary_HEADER, AcceptEncoding_HEADER);
+        final Optional<String> encoding_opt =
+                CompressedPayloadCache.negotiate(routingContext.request().getHeader(AcceptEncoding_HEADER));
+        final String entityTag = response.headers().get(ETag_HEADER);
+        if (encoding_opt.isPresent() && entityTag != null) {
+            response.putHeader(ETag_HEADER, codedEntityTag(entityTag, encoding_opt.get()));
+        }
+        if (encoding_opt.isPresent() && cacheKey != null) {
+            final Optional<byte[]> cached = compressedPayloads.get(cacheKey, encoding_opt.get());
+            if (cached.isPresent()) {
+                response.putHeader(ContentEncoding_HEADER, encoding_opt.get()).end(Buffer.buffer(cached.get()));
+                return;
+            }
+        }
+        encoding_opt.ifPresent(encoding -> response.putHeader(ContentEncoding_HEADER, encoding));
+        final ChunkedResponseStream chunks =
+                new ChunkedResponseStream(vertx.getOrCreateContext(), response, RESPONSE_CHUNK_SIZE);
+        vertx.<Boolean>executeBlocking(future -> {
+            try {
+                final OutputStream out = encoding_opt.isPresent()
+                        ? compressedPayloads.compressTo(cacheKey, encoding_opt.get(), chunks)
+                        : chunks;
+                final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                if (bodyWriter.write(writer)) {
+                    writer.close();
+                    future.complete(true);
+                } else {
+                    chunks.abort();
+                    future.complete(false);
+                }
+            } catch (IOException | RuntimeException e) {
+                chunks.abort();
+                future.fail(e);
+            }
+        }, false, res -> {
+            if (res.succeeded() && res.result()) {
+                return;
+            }
+            if (res.failed()) {
+                System.err.println("Server streamJson: " + res.cause().getMessage());
+            }
+            if (!chunks.isCommitted() && !response.closed()) {
+                response.headers().remove(ContentEncoding_HEADER).remove(ETag_HEADER);
+                if (res.failed()) {
+                    response.setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
+                } else {
+                    response.setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
+                }
+            }
+        });
+    }
+
+    /**
+     * writes a Json body, see {@link #streamJson(RoutingContext, String, JsonBodyWriter)}
+     */
+    @FunctionalInterface
+    private interface JsonBodyWriter {
+        /**
+         * @param writer the target of the Json body
+         * @return true if the body was written, false if there is nothing to write and nothing was written
+         * @throws IOException if the body could not be written
+         */
+        boolean write(Writer writer) throws IOException;
+    }
+
+    /**
+     * builds a strong entity tag from the parts which identify the content of a response
+     *
+     * @param parts the parts, e.g. a version and the requested range
+     * @return the quoted entity tag
+     */
+    private static String entityTag(String... parts) {
+        return "\"" + UUID.nameUUIDFromBytes(String.join("|", parts).getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * computes a digest of a response body, so that it can be identified without holding on to it
+     * unlike the length and the hash code, the digest of different contents does not collide in practice
+     *
+     * @param body the body of a response
+     * @return the hexadecimal SHA-256 digest of the body
+     */
+    private static String contentDigest(String body) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            /* every Java platform has to support SHA-256 */
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(body.getBytes(StandardCharsets.UTF_8))) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * builds the entity tag of a model view
+     *
+     * @param generation  the generation of the model
+     * @param permissions the permissions the view is filtered with
+     * @param groups      the groups the view is filtered with
+     * @return the quoted entity tag
+     */
+    private static String modelEntityTag(long generation, List<String> permissions, List<String> groups) {
+        return entityTag(Long.toString(generation), sortedJoin(permissions), sortedJoin(groups));
+    }
+
+    /**
+     * joins a list of identifiers independent of their order
+     *
+     * @param identifiers e.g. permissions or groups
+     * @return the sorted identifiers, joined by commas
+     */
+    private static String sortedJoin(List<String> identifiers) {
+        return identifiers.stream().sorted().collect(Collectors.joining(","));
+    }
+
+    /**
+     * derives the entity tag of a compressed body from the tag of the uncompressed content
+     * every content coding is a different representation, so it needs its own strong entity tag
+     *
+     * @param entityTag the quoted entity tag of the uncompressed content
+     * @param encoding  the content coding, e.g. 'gzip'
+     * @return the quoted entity tag of the compressed body
+     */
+    private static String codedEntityTag(String entityTag, String encoding) {
+        return entityTag.substring(0, entityTag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    /**
+     * checks whether the client already has the current content, as told by the 'If-None-Match' header
+     * the client may hold the uncompressed content or the content in the coding it accepts,
+     * since small bodies are never compressed
+     *
+     * @param routingContext the context in a route given by the router
+     * @param entityTag      the entity tag of the current, uncompressed content
+     * @return true if one of the entity tags sent by the client matches
+     */
+    private static boolean isNotModified(RoutingContext routingContext, String entityTag) {
+        final String ifNoneMatch = routingContext.request().getHeader(IfNoneMatch_HEADER);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        final String codedEntityTag = CompressedPayloadCache
+                .negotiate(routingContext.request().getHeader(AcceptEncoding_HEADER))
+                .map(encoding -> codedEntityTag(entityTag, encoding)).orElse(entityTag);
+        for (String tag : ifNoneMatch.split(",")) {
+            final String trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(entityTag) || trimmed.equals(codedEntityTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * gets an object which is shared by all instances of this verticle
+     * the first instance which asks for it creates it
+     *
+     * @param key     the name of the object in the shared map
+     * @param factory creates the object, if it does not exist yet
+     * @param <T>     the type of the object
+     * @return the shared object
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Shareable> T getShared(String key, Supplier<T> factory) {
+        final LocalMap<String, Shareable> sharedState = vertx.sharedData().getLocalMap(SharedState_MAP);
+        synchronized (Server.class) {
+            Shareable value = sharedState.get(key);
+            if (value == null) {
+                value = factory.get();
+                sharedState.put(key, value);
+            }
+            return (T) value;
+        }
+    }
+
+    /**
+     * authenticates requests which carry a session token in the 'Authorization: Bearer' header
+     * the user is set on the context, so the following BasicAuth handler only has to authorise
+     * requests without such a header are passed on unchanged
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void tokenAuthentication(RoutingContext routingContext) {
+        final String authorization = routingContext.request().getHeader(Authorization_HEADER);
+        if (authorization == null || !authorization.startsWith(Bearer_PREFIX)) {
+            routingContext.next();
+            return;
+        }
+        final Optional<String> username = sessionStore.getUsername(authorization.substring(Bearer_PREFIX.length()).trim());
+        if (username.isPresent()) {
+            routingContext.setUser(new SessionUser(username.get()));
+            routingContext.next();
+        } else {
+            routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
+        }
+    }
+
+    /**
+     * handles the REST-Api call for Route /api/user/login
+     * the caller has to authenticate with BasicAuth once
+     * returns a session token and its expiry as Json in the response body
+     * the token can be sent as 'Authorization: Bearer &lt;token&gt;' on all following requests
+     * a token cannot be used to get a new one, otherwise a stolen token would never expire
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void login(RoutingContext routingContext) {
+        if (Main.SERVER_DBG) printDebugInfo(routingContext);
+        final String authorization = routingContext.request().getHeader(Authorization_HEADER);
+        if (authorization != null && authorization.startsWith(Bearer_PREFIX)) {
+            routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
+            return;
+        }
+        final String username = routingContext.user().principal().getString(Username_PARAM);
+        final String token = sessionStore.createToken(username);
+        final JsonObject answer = new JsonObject()
+                .put(Token_FIELD, token)
+                .put("expires", sessionStore.getExpiry(token).orElse(0L));
+        routingContext.response().setStatusCode(OK_HTTP_CODE)
+                .putHeader(ContentType_HEADER, ContentType_VALUE)
+                .end(answer.encode());
+    }
+
+    /**
+     * ends the model event streams of a user on all instances of this verticle
+     * clients whose session is still valid subscribe again and get their current permissions and groups
+     *
+     * @param username the name of the user
+     * @param token    only end the streams which were opened with this session token; null to end all of them
+     */
+    private void endModelEvents(String username, String token) {
+        vertx.eventBus().publish(EndModelEvents_ADDRESS,
+                new JsonObject().put(Username_PARAM, username).put(Token_FIELD, token));
+    }
+
+    /**
+     * handles the REST-Api call for Route /api/user/logout
+     * revokes the session token the request was sent with
+     * if the request was sent with BasicAuth, all sessions of the user are revoked
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void logout(RoutingContext routingContext) {
+        if (Main.SERVER_DBG) printDebugInfo(routingContext);
+        final String authorization = routingContext.request().getHeader(Authorization_HEADER);
+        final String username = routingContext.user().principal().getString(Username_PARAM);
+        if (authorization != null && authorization.startsWith(Bearer_PREFIX)) {
+            final String token = authorization.substring(Bearer_PREFIX.length()).trim();
+            sessionStore.revoke(token);
+            endModelEvents(username, token);
+        } else {
+            sessionStore.revokeAll(username);
+            endModelEvents(username, null);
+        }
+        routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
+    }
+
     /**
      * Handles the REST-API call for Route /api/register.
      * needs parameter username and password
@@ -326,7 +766,8 @@ public class Server extends AbstractVerticle {
         final String salt = authProvider.generateSalt();
         final String hash = authProvider.computeHash(password, salt);
         final JsonArray params = new JsonArray().add(username).add(hash).add(salt).add(prename).add(surname);
-        connection.updateWithParams("INSERT INTO USER VALUES (?, ?, ?, ?, ?)", params, res -> {
+        connectionPool.<UpdateResult>execute((connection, done) ->
+                connection.updateWithParams("INSERT INTO USER VALUES (?, ?, ?, ?, ?)", params, done), res -> {
             if (res.succeeded()) {
                 next.handle(Future.succeededFuture());
             } else {
@@ -349,7 +790,7 @@ public class Server extends AbstractVerticle {
         for (String group : groups) {
             params.add(new JsonArray().add(group).add(username));
         }
-        connection.batchWithParams(query, params, res -> {
+        connectionPool.<List<Integer>>execute((connection, done) -> connection.batchWithParams(query, params, done), res -> {
             if (res.succeeded()) {
                 next.handle(Future.succeededFuture());
             } else {
@@ -372,7 +813,7 @@ public class Server extends AbstractVerticle {
         for (String group : groups) {
             params.add(new JsonArray().add(username).add(group));
         }
-        connection.batchWithParams(query, params, res -> {
+        connectionPool.<List<Integer>>execute((connection, done) -> connection.batchWithParams(query, params, done), res -> {
             if (res.succeeded()) {
                 next.handle(Future.succeededFuture());
             } else {
@@ -394,7 +835,7 @@ public class Server extends AbstractVerticle {
         queries.add("DELETE FROM `USER_ROLE` WHERE `user`=" + "'" + username + "';");
         queries.add("DELETE FROM `USER`  WHERE `username`=" + "'" + username + "';");
         queries.add("COMMIT;");
-        connection.batch(queries, res -> {
+        connectionPool.<List<Integer>>execute((connection, done) -> connection.batch(queries, done), res -> {
             if (res.succeeded()) {
                 next.handle(Future.succeededFuture());
             } else {
@@ -435,7 +876,7 @@ public class Server extends AbstractVerticle {
                             future.handle(Future.failedFuture(future.cause()));
                         }
                     }
-                }, res2 -> {
+                }, false, res2 -> {
                     if (res2.succeeded()) {
                         routingContext.response()
                                 .setStatusCode(OK_HTTP_CODE)
@@ -470,6 +911,20 @@ public class Server extends AbstractVerticle {
         });
     }
 
+    /**
+     * Hands the result of a future to a handler on the context of this verticle,
+     * so that handlers never run on the threads of the FHEM connection.
+     *
+     * @param future        the future, e.g. of a FHEM command
+     * @param resultHandler Handler which gets called when the future completes
+     * @param <T>           the type of the result
+     */
+    private <T> void onContext(CompletableFuture<T> future, Handler<AsyncResult<T>> resultHandler) {
+        final Context context = vertx.getOrCreateContext();
+        future.whenComplete((result, error) -> context.runOnContext(v -> resultHandler.handle(error == null
+                ? Future.succeededFuture(result) : Future.failedFuture(error))));
+    }
+
     /**
      * handles the REST-Api call for Route /api/setSensorPosition
      * needs parameter SensorName, coordX and coordY
@@ -499,19 +954,61 @@ public class Server extends AbstractVerticle {
 
         darfErDas(routingContext.user(), Edit_PERMISSION, res -> {
             if (res.succeeded() && res.result()) {
-                vertx.executeBlocking(future -> {
-                    if (!parser.readMutex().equals(routingContext.user().principal().getString(Username_PARAM))) {
-                        future.handle(Future.failedFuture(future.cause()));
+                if (!parser.readMutex().equals(routingContext.user().principal().getString(Username_PARAM))) {
+                    routingContext.response()
+                            .setStatusCode(Unavailable_HTTP_CODE)
+                            .end(Unavailable_SERVER_RESPONSE);
+                    return;
+                }
+                onContext(parser.setSensorPosition(coordX, coordY, sensorName), res2 -> {
+                    if (res2.succeeded() && res2.result()) {
+                        routingContext.response()
+                                .setStatusCode(OK_HTTP_CODE)
+                                .end(ChangedSensorPosition_SERVER_RESPONSE);
                     } else {
-                        final Boolean result = parser.setSensorPosition(coordX, coordY, sensorName);
-                        if (result) {
-                            future.handle(Future.succeededFuture());
-                        } else {
-                            future.handle(Future.failedFuture(future.cause()));
-                        }
+                        routingContext.response()
+                                .setStatusCode(Unavailable_HTTP_CODE)
+                                .end(Unavailable_SERVER_RESPONSE);
                     }
-                }, res2 -> {
-                    if (res2.succeeded()) {
+                });
+            } else {
+                routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
+            }
+        });
+    }
+
+    /**
+     * handles the REST-Api call for Route /api/model/sensor/positions
+     * needs a Json array of positions in the request body, like [{"sensorname":"x","coordX":10,"coordY":20}]
+     * checks for users permission and calls the model to set all positions in one batch
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void setSensorPositions(RoutingContext routingContext) {
+        if (Main.SERVER_DBG) printDebugInfo(routingContext);
+        final SensorPosition[] positions;
+        try {
+            positions = new Gson().fromJson(routingContext.getBodyAsString(), SensorPosition[].class);
+        } catch (JsonSyntaxException e) {
+            routingContext.response().setStatusCode(BadRequest_HTTP_CODE).end(BadRequest_SERVER_RESPONSE);
+            return;
+        }
+        if (positions == null || positions.length == 0 || Arrays.stream(positions).anyMatch(position ->
+                position == null || position.getSensorName() == null || position.getSensorName().isEmpty())) {
+            routingContext.response().setStatusCode(BadRequest_HTTP_CODE).end(BadRequest_SERVER_RESPONSE);
+            return;
+        }
+
+        darfErDas(routingContext.user(), Edit_PERMISSION, res -> {
+            if (res.succeeded() && res.result()) {
+                if (!parser.readMutex().equals(routingContext.user().principal().getString(Username_PARAM))) {
+                    routingContext.response()
+                            .setStatusCode(Unavailable_HTTP_CODE)
+                            .end(Unavailable_SERVER_RESPONSE);
+                    return;
+                }
+                onContext(parser.setSensorPositions(Arrays.asList(positions)), res2 -> {
+                    if (res2.succeeded() && res2.result()) {
                         routingContext.response()
                                 .setStatusCode(OK_HTTP_CODE)
                                 .end(ChangedSensorPosition_SERVER_RESPONSE);
@@ -527,10 +1024,103 @@ public class Server extends AbstractVerticle {
         });
     }
 
+    /**
+     * handles the REST-Api call for Route /api/model/delta
+     * needs parameter since, the generation of the model the caller already has
+     * returns only the sensors, snapshots and history events which changed since then, as Json in the response body
+     * if the generation is too old, the whole model is returned instead, marked by the header 'delta: false'
+     * the header 'generation' holds the generation to pass on the next call
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void getModelDelta(RoutingContext routingContext) {
+        if (Main.SERVER_DBG) printDebugInfo(routingContext);
+        final String since_param = routingContext.request().getParam(Since_PARAM);
+        final long since;
+        try {
+            since = Long.parseLong(since_param);
+        } catch (NumberFormatException e) {
+            routingContext.response()
+                    .setStatusCode(BadRequest_HTTP_CODE)
+                    .end(BadRequest_SERVER_RESPONSE);
+            return;
+        }
+        final Optional<ModelChange> change_opt = parser.getModelChangesSince(since);
+        if (!change_opt.isPresent()) {
+            /* the generation header is set by getModel, from the model it sends */
+            routingContext.response().putHeader(Delta_HEADER, Boolean.toString(false));
+            getModel(routingContext);
+            return;
+        }
+        final ModelChange change = change_opt.get();
+        final String username = routingContext.user().principal().getString(Username_PARAM);
+        Future<List<String>> permissionsFuture = Future.future();
+        getListOfPermissions(username, permissionsFuture);
+        Future<List<String>> groupsFuture = Future.future();
+        getListOfGroups(username, groupsFuture);
+        CompositeFuture.join(permissionsFuture, groupsFuture).setHandler(res -> {
+            if (res.succeeded()) {
+                final List<String> permissions = res.result().resultAt(0);
+                final List<String> groups = res.result().resultAt(1);
+                vertx.<String>executeBlocking(future -> future.complete(
+                        new ModelChangeSerializer(permissions, groups, false).toJson(change)), false, res2 -> {
+                    if (res2.succeeded()) {
+                        routingContext.response().putHeader(Delta_HEADER, Boolean.toString(true))
+                                .putHeader(Generation_HEADER, Long.toString(change.getGeneration()));
+                        endJson(routingContext, res2.result(), null);
+                    } else {
+                        routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
+                        System.out.println(res2.cause().getMessage());
+                    }
+                });
+            } else {
+                routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
+                System.out.println(res.cause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * handles the REST-Api call for Route /api/model/events
+     * keeps the connection open as a stream of server-sent events
+     * whenever a new model is published, the changed sensors and new rule snapshots
+     * which the user is permitted to see are pushed as Json in an 'update' event
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void subscribeModelEvents(RoutingContext routingContext) {
+        if (Main.SERVER_DBG) printDebugInfo(routingContext);
+        final String username = routingContext.user().principal().getString(Username_PARAM);
+        final String authorization = routingContext.request().getHeader(Authorization_HEADER);
+        final String token = authorization != null && authorization.startsWith(Bearer_PREFIX)
+                ? authorization.substring(Bearer_PREFIX.length()).trim() : null;
+        final long epoch = permissionCache.getEpoch();
+        Future<List<String>> permissionsFuture = Future.future();
+        getListOfPermissions(username, permissionsFuture);
+        Future<List<String>> groupsFuture = Future.future();
+        getListOfGroups(username, groupsFuture);
+        CompositeFuture.join(permissionsFuture, groupsFuture).setHandler(res -> {
+            if (res.succeeded()) {
+                if (permissionCache.getEpoch() != epoch) {
+                    /* the permissions were changed meanwhile, the stream would not be ended for that change */
+                    subscribeModelEvents(routingContext);
+                    return;
+                }
+                modelEvents.subscribe(routingContext.response().setStatusCode(OK_HTTP_CODE), username, token,
+                        res.result().resultAt(0), res.result().resultAt(1));
+            } else {
+                routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
+                System.out.println(res.cause().getMessage());
+            }
+        });
+    }
+
     /**
      * handles the REST-Api call for Route /api/getModel
      * lists the users permission and hands it to the model, to build a user-specific view
      * which is returned as Json in the response body
+     * answers 304 if the 'If-None-Match' header matches the ETag of the current model and permissions
+     * the header 'generation' holds the generation of the returned model, to pass on to /api/model/delta
      *
      * @param routingContext the context in a route given by the router
      */
@@ -545,8 +1135,14 @@ public class Server extends AbstractVerticle {
             if (res.succeeded()) {
                 final List<String> permissions = res.result().resultAt(0);
                 final List<String> groups = res.result().resultAt(1);
-                vertx.executeBlocking(future -> {
-                    final Optional<String> answerData_opt = parser.getFHEMModelJSON(permissions, groups);
+                final long generation = parser.getGeneration();
+                if (isNotModified(routingContext, modelEntityTag(generation, permissions, groups))) {
+                    routingContext.response().putHeader(Generation_HEADER, Long.toString(generation))
+                            .setStatusCode(NotModified_HTTP_CODE).end();
+                    return;
+                }
+                vertx.<SerializedModel>executeBlocking(future -> {
+                    final Optional<SerializedModel> answerData_opt = parser.getSerializedModel(permissions, groups);
                     if (!answerData_opt.isPresent()) {
                         System.out.println("Server getModel: answerData is not present");
                         future.handle(Future.failedFuture(future.cause()));
@@ -555,11 +1151,14 @@ public class Server extends AbstractVerticle {
                     }
                 }, res2 -> {
                     if (res2.succeeded()) {
-                        final String answerData = (String) res2.result();
+                        final String answerData = res2.result().getJson();
                         if (!answerData.equals("null")) {
-                            routingContext.response().setStatusCode(OK_HTTP_CODE)
-                                    .putHeader(ContentType_HEADER, ContentType_VALUE)
-                                    .end(answerData);
+                            /* the tag and the generation belong to the model which was actually serialized */
+                            final String entityTag =
+                                    modelEntityTag(res2.result().getGeneration(), permissions, groups);
+                            routingContext.response().putHeader(ETag_HEADER, entityTag)
+                                    .putHeader(Generation_HEADER, Long.toString(res2.result().getGeneration()));
+                            endJson(routingContext, answerData, entityTag);
                         } else {
                             routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
                         }
@@ -644,9 +1243,7 @@ public class Server extends AbstractVerticle {
                 getListOfUsers(res2 -> {
                     if (res2.succeeded()) {
                         final String answerString = new Gson().toJson(res2.result());
-                        routingContext.response().setStatusCode(OK_HTTP_CODE)
-                                .putHeader(ContentType_HEADER, ContentType_VALUE)
-                                .end(answerString);
+                        endJson(routingContext, answerString, null);
                     } else {
                         routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
                         res2.cause().printStackTrace();
@@ -689,6 +1286,8 @@ public class Server extends AbstractVerticle {
         darfErDas(routingContext.user(), Edit_PERMISSION, res -> {
             if (res.succeeded() && res.result()) {
                 addGroupsForUserInDatabase(toUpdateUserName, groups, asyncResult -> {
+                    permissionCache.invalidate(toUpdateUserName);
+                    endModelEvents(toUpdateUserName, null);
                     if (asyncResult.succeeded()) {
                         routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
                     } else {
@@ -733,6 +1332,8 @@ public class Server extends AbstractVerticle {
         darfErDas(routingContext.user(), Edit_PERMISSION, res -> {
             if (res.succeeded() && res.result()) {
                 removeGroupsFromUserInDatabase(toUpdateUserName, groups, asyncResult -> {
+                    permissionCache.invalidate(toUpdateUserName);
+                    endModelEvents(toUpdateUserName, null);
                     if (asyncResult.succeeded()) {
                         routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
                     } else {
@@ -767,6 +1368,8 @@ public class Server extends AbstractVerticle {
             // update own account
             updateUserPassword(requestingUserName, newPassword, asyncResult -> {
                 if (asyncResult.succeeded()) {
+                    sessionStore.revokeAll(requestingUserName);
+                    endModelEvents(requestingUserName, null);
                     routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
                 } else {
                     routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
@@ -779,6 +1382,8 @@ public class Server extends AbstractVerticle {
                 if (res.succeeded() && res.result()) {
                     updateUserPassword(toUpdateUserName, newPassword, asyncResult -> {
                         if (asyncResult.succeeded()) {
+                            sessionStore.revokeAll(toUpdateUserName);
+                            endModelEvents(toUpdateUserName, null);
                             routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
                         } else {
                             routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
@@ -805,6 +1410,9 @@ public class Server extends AbstractVerticle {
         if (toDeleteUserName == null || toDeleteUserName.isEmpty()) {
             // delete own account
             deleteUserFromDatabase(requestingUserName, asyncResult -> {
+                permissionCache.invalidate(requestingUserName);
+                sessionStore.revokeAll(requestingUserName);
+                endModelEvents(requestingUserName, null);
                 if (asyncResult.succeeded()) {
                     routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
                 } else {
@@ -816,6 +1424,9 @@ public class Server extends AbstractVerticle {
             darfErDas(routingContext.user(), Edit_PERMISSION, res -> {
                 if (res.succeeded() && res.result()) {
                     deleteUserFromDatabase(toDeleteUserName, asyncResult -> {
+                        permissionCache.invalidate(toDeleteUserName);
+                        sessionStore.revokeAll(toDeleteUserName);
+                        endModelEvents(toDeleteUserName, null);
                         if (asyncResult.succeeded()) {
                             routingContext.response().setStatusCode(OK_HTTP_CODE).end(OK_SERVER_RESPONSE);
                         } else {
@@ -862,7 +1473,7 @@ public class Server extends AbstractVerticle {
         getListOfPermissions(routingContext.user().principal().getString(Username_PARAM), res -> {
             if (res.succeeded()) {
                 final List<String> perm = res.result();
-                vertx.executeBlocking(future -> {
+                vertx.<Map.Entry<String, String>>executeBlocking(future -> {
                     final Optional<String> answerData_opt;
                     if (hasHash) {
                         answerData_opt = parser.getRoomplan(room, hash, perm);
@@ -873,15 +1484,17 @@ public class Server extends AbstractVerticle {
                         if (Main.SERVER_DBG) System.err.println("getRoomplan: AnswerData is not present");
                         future.handle(Future.failedFuture(future.cause()));
                     } else {
-                        future.handle(Future.succeededFuture(answerData_opt.get()));
+                        /* the plan is digested here, it might be too big to do that on the event loop */
+                        final String answerData = answerData_opt.get();
+                        final String cacheKey = answerData.equals("null")
+                                ? null : entityTag(Room_PARAM, room, contentDigest(answerData));
+                        future.handle(Future.succeededFuture(new AbstractMap.SimpleImmutableEntry<>(answerData, cacheKey)));
                     }
                 }, res2 -> {
                     if (res2.succeeded()) {
-                        final String answerData = (String) res2.result();
+                        final String answerData = res2.result().getKey();
                         if (!answerData.equals("null")) {
-                            routingContext.response().setStatusCode(OK_HTTP_CODE)
-                                    .putHeader(ContentType_HEADER, ContentType_VALUE)
-                                    .end(answerData);
+                            endJson(routingContext, answerData, res2.result().getValue());
                         } else {
                             routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
                         }
@@ -915,8 +1528,6 @@ public class Server extends AbstractVerticle {
                     }
                 }, res2 -> {
                     if (res2.succeeded()) {
-                        TimerofMutexID = (Long) res2.result();
-                        if (Main.SERVER_DBG) System.out.println("set TimerofMutexID to: " + TimerofMutexID);
                         final String str = res2.result().toString();
                         routingContext.response()
                                 .putHeader(MutexID_HEADER, str)
@@ -951,17 +1562,17 @@ public class Server extends AbstractVerticle {
                     .end(BadRequest_SERVER_RESPONSE);
             return;
         }
-        final long timerID = Long.parseLong(mutexID);
+        final long timerID;
+        try {
+            timerID = Long.parseLong(mutexID);
+        } catch (NumberFormatException e) {
+            routingContext.response()
+                    .setStatusCode(BadRequest_HTTP_CODE)
+                    .end(BadRequest_SERVER_RESPONSE);
+            return;
+        }
         vertx.executeBlocking(future -> {
-            if (timerID != TimerofMutexID) {
-                if (Main.SERVER_DBG)
-                    System.out.println("Server not matching: timerID=" + timerID + ", TimerofMutexID=" + TimerofMutexID);
-                routingContext.response()
-                        .setStatusCode(Unavailable_HTTP_CODE)
-                        .end(Unavailable_SERVER_RESPONSE);
-                return;
-            }
-            final boolean result = parser.releaseMutex(routingContext.user().principal().getString(Username_PARAM));
+            final boolean result = parser.releaseMutex(routingContext.user().principal().getString(Username_PARAM), timerID);
             if (result) {
                 future.handle(Future.succeededFuture());
             } else {
@@ -969,9 +1580,6 @@ public class Server extends AbstractVerticle {
             }
         }, res2 -> {
             if (res2.succeeded()) {
-                vertx.cancelTimer(timerID);
-                TimerofMutexID = 0;
-                if (Main.SERVER_DBG) System.out.println("Server canceled timer and reset TimerofMutexID");
                 routingContext.response()
                         .setStatusCode(OK_HTTP_CODE)
                         .end(OK_SERVER_RESPONSE);
@@ -987,6 +1595,8 @@ public class Server extends AbstractVerticle {
      * handles the REST-Api call for Route /api/setActuator
      * needs parameter sensorname, state
      * all parameter should be embedded in the request URI
+     * answers with the state FHEM settled on in the 'state' header, which may differ from the requested one
+     * if other requests for the same actuator came in meanwhile
      *
      * @param routingContext the context in a route given by the router
      */
@@ -1008,16 +1618,10 @@ public class Server extends AbstractVerticle {
         getListOfPermissions(routingContext.user().principal().getString(Username_PARAM), res -> {
             if (res.succeeded()) {
                 List<String> perm = res.result();
-                vertx.executeBlocking(future -> {
-                    Boolean status = parser.setActuator(sensorName, state, perm);
-                    if (status) {
-                        future.handle(Future.succeededFuture(true));
-                    } else {
-                        future.handle(Future.failedFuture(future.cause()));
-                    }
-                }, res2 -> {
-                    if (res2.succeeded()) {
+                onContext(parser.setActuator(sensorName, state, perm), res2 -> {
+                    if (res2.succeeded() && res2.result().isPresent()) {
                         routingContext.response()
+                                .putHeader(State_HEADER, res2.result().get())
                                 .setStatusCode(OK_HTTP_CODE)
                                 .end(OK_SERVER_RESPONSE);
                     } else {
@@ -1038,6 +1642,8 @@ public class Server extends AbstractVerticle {
      * needs parameter ID
      * optional parameter startTime and endTime
      * all parameter should be embedded in the request URI
+     * answers 304 if the 'If-None-Match' header matches the ETag of the logfile and range
+     * the timeserie is streamed into the response, so its Json representation is never held in memory as a whole
      *
      * @param routingContext the context in a route given by the router
      */
@@ -1068,35 +1674,91 @@ public class Server extends AbstractVerticle {
         }
         getListOfPermissions(routingContext.user().principal().getString(Username_PARAM), res -> {
             if (res.succeeded()) {
-                vertx.executeBlocking(future -> {
-                    List<String> perm = res.result();
-                    Optional<String> answerData_opt;
-                    if (hasTargetTime) {
-                        answerData_opt = parser.getTimeserie(startTime, endTime, id_param, perm);
-                    } else {
-                        answerData_opt = parser.getTimeserie(id_param, perm);
-                    }
-                    if (answerData_opt.isPresent()) {
-                        future.handle(Future.succeededFuture(answerData_opt.get()));
-                    } else {
-                        System.err.println("getTimeseries: AnswerData is not present");
-                        future.handle(Future.failedFuture(future.cause()));
-                    }
-                }, res2 -> {
-                    if (res2.succeeded()) {
-                        String answerData = (String) res2.result();
-                        routingContext.response().setStatusCode(OK_HTTP_CODE)
-                                .putHeader(ContentType_HEADER, ContentType_VALUE)
-                                .end(answerData);
-                    } else {
-                        routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
-                        System.out.println(res2.cause().getMessage());
-                    }
-                });
+                final Optional<String> version_opt = parser.getTimeserieVersion(id_param, res.result());
+                if (!version_opt.isPresent()) {
+                    routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
+                    return;
+                }
+                final String entityTag = hasTargetTime
+                        ? entityTag(version_opt.get(), Long.toString(startTime), Long.toString(endTime))
+                        : entityTag(version_opt.get());
+                if (isNotModified(routingContext, entityTag)) {
+                    routingContext.response().setStatusCode(NotModified_HTTP_CODE).end();
+                    return;
+                }
+                routingContext.response().putHeader(ETag_HEADER, entityTag);
+                final List<String> perm = res.result();
+                final long from = hasTargetTime ? startTime : 0;
+                final long to = hasTargetTime ? endTime : System.currentTimeMillis() / 1000L;
+                streamJson(routingContext, entityTag,
+                        writer -> parser.writeTimeserie(from, to, id_param, perm, writer));
             } else {
                 routingContext.response().setStatusCode(Unavailable_HTTP_CODE).end(Unavailable_SERVER_RESPONSE);
                 System.out.println(res.cause().getMessage());
             }
         });
     }
+
+    /**
+     * handles the REST-Api call for Route /api/metrics
+     * lists internal counters of the server, like the hit rate of the permission cache
+     * which is returned as Json in the response body
+     *
+     * @param routingContext the context in a route given by the router
+     */
+    private void getMetrics(RoutingContext routingContext) {
+        if (Main.SERVER_DBG) printDebugInfo(routingContext);
+        darfErDas(routingContext.user(), Edit_PERMISSION, res -> {
+            if (res.succeeded() && res.result()) {
+                final JsonObject metrics = new JsonObject()
+                        .put("permissionCache", new JsonObject()
+                                .put("hits", permissionCache.getHits())
+                                .put("misses", permissionCache.getMisses())
+                                .put("hitRate", permissionCache.getHitRate())
+                                .put("size", permissionCache.size())
+                                .put("evictions", permissionCache.getEvictions())
+                                .put("invalidations", permissionCache.getInvalidations()))
+                        .put("sessions", new JsonObject()
+                                .put("active", sessionStore.size()))
+                        .put("database", new JsonObject()
+                                .put("poolSize", poolStatistics.getMaxSize())
+                                .put("inUse", poolStatistics.getInUse())
+                                .put("maxInUse", poolStatistics.getMaxInUse())
+                                .put("utilisation", poolStatistics.getUtilisation())
+                                .put("acquired", poolStatistics.getAcquired())
+                                .put("averageWait", poolStatistics.getAverageWait())
+                                .put("maxWait", poolStatistics.getMaxWait())
+                                .put("timeouts", poolStatistics.getTimeouts())
+                                .put("failures", poolStatistics.getFailures()))
+                        .put("fhemSaves", new JsonObject()
+                                .put("requested", parser.getRequestedSaves())
+                                .put("performed", parser.getPerformedSaves())
+                                .put("failed", parser.getFailedSaves()))
+                        .put("fhemPolls", Main.poller == null ? new JsonObject() : new JsonObject()
+                                .put("interval", Main.poller.getInterval())
+                                .put("lastDuration", Main.poller.getLastDuration())
+                                .put("polls", Main.poller.getPolls())
+                                .put("changed", Main.poller.getChangedPolls())
+                                .put("skippedTicks", Main.poller.getSkippedTicks()))
+                        .put("fhemCommands", new JsonObject()
+                                .put("inFlight", parser.getCommandsInFlight())
+                                .put("waiting", parser.getCommandsWaiting())
+                                .put("timedOut", parser.getCommandsTimedOut())
+                                .put("actuatorsCoalesced", parser.getActuatorsCoalesced()))
+                        .put("modelEvents", new JsonObject()
+                                .put("subscribers", modelEvents.size()))
+                        .put("compression", new JsonObject()
+                                .put("compressions", compressedPayloads.getCompressions())
+                                .put("hits", compressedPayloads.getHits())
+                                .put("ratio", compressedPayloads.getRatio())
+                                .put("cpuTime", compressedPayloads.getCpuTime())
+                                .put("size", compressedPayloads.size()));
+                routingContext.response().setStatusCode(OK_HTTP_CODE)
+                        .putHeader(ContentType_HEADER, ContentType_VALUE)
+                        .end(metrics.encode());
+            } else {
+                routingContext.response().setStatusCode(Unauthorized_HTTP_CODE).end(Unauthorized_SERVER_RESPONSE);
+            }
+        });
+    }
 }
@@ -33,6 +33,25 @@ public final class EventList {
         }
     }
 
+    private EventList(List<CalendarEvent> events) {
+        this.events.addAll(events);
+    }
+
+    /**
+     * Get the events which have not ended yet, without reading the file again.
+     *
+     * @return this list if none of its events ended, otherwise a list without the ended events
+     */
+    public EventList current() {
+        long now = Instant.now().getEpochSecond();
+        if (events.stream().noneMatch(event -> event.getEndStamp() < now)) {
+            return this;
+        }
+        EventList current = new EventList(events);
+        current.events.removeIf(event -> event.getEndStamp() < now);
+        return current;
+    }
+
     public List<CalendarEvent> getEvents() {
         return events;
     }
@@ -0,0 +1,134 @@
+package webserver.fhemParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * This class queues the commands which switch actuators, one queue per device.
+ * At most one command per device is sent at a time. While it is in flight, only the newest requested state
+ * is kept, so intermediate states of a toggle which is hammered never reach FHEM.
+ * Commands for different devices are sent independently of each other.
+ * Every caller is told the state which FHEM settled on once the queue of the device ran empty,
+ * which is not necessarily the state the caller requested.
+ * All methods are thread safe.
+ */
+final class ActuatorQueue {
+    /**
+     * Sends 'set device state' to FHEM, completes with false if that failed.
+     */
+    private final BiFunction<String, String, CompletableFuture<Boolean>> send;
+    /**
+     * The queues of the devices which have a command in flight, by device name.
+     */
+    private final Map<String, Queue> queues = new HashMap<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Construct an empty queue.
+     *
+     * @param send sends 'set device state' to FHEM, completes with false if that failed
+     */
+    ActuatorQueue(BiFunction<String, String, CompletableFuture<Boolean>> send) {
+        this.send = send;
+    }
+
+    /**
+     * Request a device to be set to a state. The command is sent right away if none is in flight for the device,
+     * otherwise it replaces any command for the device which was not sent yet.
+     *
+     * @param device the name of the device
+     * @param state  the requested state
+     * @return the state FHEM settled on, once no more commands are queued for the device;
+     * empty if no command was accepted by FHEM
+     */
+    CompletableFuture<Optional<String>> request(String device, String state) {
+        requested.incrementAndGet();
+        final CompletableFuture<Optional<String>> settled = new CompletableFuture<>();
+        synchronized (this) {
+            final Queue queue = queues.get(device);
+            if (queue != null) {
+                if (queue.pending != null) {
+                    coalesced.incrementAndGet();
+                }
+                queue.pending = state;
+                queue.waiters.add(settled);
+                return settled;
+            }
+            final Queue created = new Queue();
+            created.waiters.add(settled);
+            queues.put(device, created);
+        }
+        sendNext(device, state);
+        return settled;
+    }
+
+    /**
+     * Send a command, then the newest one which was requested meanwhile, until none is left.
+     *
+     * @param device the name of the device
+     * @param state  the state to send
+     */
+    private void sendNext(String device, String state) {
+        sent.incrementAndGet();
+        CompletableFuture<Boolean> result;
+        try {
+            result = send.apply(device, state);
+        } catch (RuntimeException e) {
+            System.err.println("Couldn't set " + device + " to " + state + ": " + e.getMessage());
+            result = CompletableFuture.completedFuture(false);
+        }
+        result.whenComplete((success, error) -> {
+            final String next;
+            final Queue done;
+            synchronized (this) {
+                final Queue queue = queues.get(device);
+                if (error == null && success) {
+                    queue.settled = state;
+                }
+                next = queue.pending;
+                queue.pending = null;
+                if (next == null) {
+                    queues.remove(device);
+                    done = queue;
+                } else {
+                    done = null;
+                }
+            }
+            if (next != null) {
+                sendNext(device, next);
+                return;
+            }
+            final Optional<String> settled = Optional.ofNullable(done.settled);
+            done.waiters.forEach(waiter -> waiter.complete(settled));
+        });
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * The commands for one device: the state which is not sent yet, and the callers which wait for the result.
+     */
+    private static final class Queue {
+        private String pending;
+        private String settled;
+        private final List<CompletableFuture<Optional<String>>> waiters = new ArrayList<>();
+    }
+}
@@ -0,0 +1,113 @@
+package webserver.fhemParser;
+
+import webserver.Main;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class holds the right to edit the model for at most one user at a time.
+ * The owner and the ID of the timeout timer are kept in one atomically updated reference,
+ * so acquiring and releasing is consistent regardless of which thread or server instance calls.
+ * The ID of the timer is handed out as the ID of the mutex; releasing requires both the owner and this ID.
+ */
+final class EditMutex {
+    /**
+     * Placeholder for the timer ID while the timer of a new owner is being set.
+     */
+    private static final long PENDING = -1;
+    /**
+     * The time in milliseconds after which the mutex is released automatically.
+     */
+    private final long timeout;
+    /**
+     * The current owner, or null if the mutex is free.
+     */
+    private final AtomicReference<Owner> owner = new AtomicReference<>();
+    /**
+     * Runs on the event loop whenever the mutex is released automatically.
+     */
+    private final Runnable onExpire;
+
+    /**
+     * Construct a free mutex.
+     *
+     * @param timeout  the time in milliseconds after which the mutex is released automatically
+     * @param onExpire runs on the event loop whenever the mutex is released automatically; must not block
+     */
+    EditMutex(long timeout, Runnable onExpire) {
+        this.timeout = timeout;
+        this.onExpire = onExpire;
+    }
+
+    /**
+     * Try to acquire the mutex for a user.
+     *
+     * @param username the username
+     * @return the ID of the mutex, if it was free
+     */
+    Optional<Long> acquire(String username) {
+        final Owner pending = new Owner(username, PENDING);
+        if (!owner.compareAndSet(null, pending)) {
+            return Optional.empty();
+        }
+        final long timerID = Main.VERTX.setTimer(timeout, this::expire);
+        owner.set(new Owner(username, timerID));
+        return Optional.of(timerID);
+    }
+
+    /**
+     * Release the mutex, if it is held by the given user under the given ID.
+     *
+     * @param username the username
+     * @param mutexID  the ID which was handed out on acquisition
+     * @return true if the mutex was released
+     */
+    boolean release(String username, long mutexID) {
+        final Owner current = owner.get();
+        if (current == null || current.timerID != mutexID || !current.username.equals(username)) {
+            return false;
+        }
+        if (!owner.compareAndSet(current, null)) {
+            return false;
+        }
+        Main.VERTX.cancelTimer(mutexID);
+        return true;
+    }
+
+    /**
+     * Release the mutex after its timeout, unless it was released and acquired again in the meantime.
+     *
+     * @param timerID the ID of the timer which fired
+     */
+    private void expire(long timerID) {
+        final Owner current = owner.get();
+        if (current != null && current.timerID == timerID && owner.compareAndSet(current, null)) {
+            System.out.println("Parser: Mutex of user " + current.username + " timed out");
+            onExpire.run();
+        }
+    }
+
+    /**
+     * Get the user which holds the mutex.
+     *
+     * @return the username, or an empty string if the mutex is free
+     */
+    String getOwner() {
+        final Owner current = owner.get();
+        return current == null ? "" : current.username;
+    }
+
+    /**
+     * A user together with the ID of the timer which releases the mutex.
+     */
+    private static final class Owner {
+        private final String username;
+        private final long timerID;
+
+        private Owner(String username, long timerID) {
+            this.username = username;
+            this.timerID = timerID;
+        }
+    }
+}
@@ -2,27 +2,49 @@ package webserver.fhemParser;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import webserver.Main;
+import com.google.gson.JsonParseException;
 import webserver.eventList.EventList;
+import webserver.fhemParser.fhemConnection.FHEMAsyncCon;
 import webserver.fhemParser.fhemConnection.FHEMClientModeCon;
 import webserver.fhemParser.fhemConnection.FHEMConnection;
+import webserver.fhemParser.fhemConnection.FHEMEvent;
+import webserver.fhemParser.fhemConnection.FHEMInformStream;
 import webserver.fhemParser.fhemConnection.FHEMNotFoundException;
+import webserver.fhemParser.fhemConnection.FHEMTelnetCon;
+import webserver.fhemParser.fhemJson.FHEMDevice;
 import webserver.fhemParser.fhemJson.JsonList2;
 import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemModel.ModelChange;
 import webserver.fhemParser.fhemModel.log.FHEMFileLog;
 import webserver.fhemParser.fhemModel.room.FHEMRoom;
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
 import webserver.fhemParser.fhemModel.serializers.ModelSerializer;
 import webserver.fhemParser.fhemUtils.FHEMUtils;
 import webserver.ruleCheck.RuleChecker;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 /**
  * This singleton class provides methods to parse a FHEM model.
@@ -40,13 +62,32 @@ public final class FHEMParser {
      */
     private static final long MUTEX_TIMEOUT = 15 * 60 * 1000;
     /**
-     * The instance of this singleton.
+     * The number of model generations for which changes are kept, to answer delta requests.
      */
-    private static FHEMParser instance;
+    private static final int CHANGE_HISTORY_SIZE = 64;
+    /**
+     * The file with the calendar events which are shown with the model.
+     */
+    private static final String EVENTS_PATH = "events.txt";
+    /**
+     * Default time in milliseconds during which requests to save the FHEM configuration are coalesced.
+     * It can be set with the global variable FHEMSAVEWINDOW; 0 saves after every edit.
+     */
+    private static final long DEFAULT_SAVE_WINDOW = 10 * 1000;
+    /**
+     * Default number of edits which are sent to FHEM at once; more edits wait for their turn.
+     * It can be set with the global variable FHEMMAXINFLIGHT.
+     */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4;
     /**
-     * The mutex, storing the user name.
+     * Default time in milliseconds after which an edit fails if FHEM did not answer.
+     * It can be set with the global variable FHEMCOMMANDTIMEOUT.
      */
-    private static String mutex = "";
+    private static final long DEFAULT_COMMAND_TIMEOUT = 10 * 1000;
+    /**
+     * The instance of this singleton.
+     */
+    private static FHEMParser instance;
     /**
      * Flag for mocking; should usually be off.
      */
@@ -54,13 +95,132 @@ public final class FHEMParser {
     /**
      * An instance of {@link webserver.fhemParser.fhemConnection.FHEMConnection FHEMConnection}
      * which this parser will use to obtain information from FHEM.
+     * This is a persistent telnet connection, unless the global variable FHEMCONNECTION is set to 'clientmode'.
+     */
+    private FHEMConnection fhc = FHEMUtils.getGlobVar("FHEMCONNECTION").filter("clientmode"::equals).isPresent()
+            ? new FHEMClientModeCon() : new FHEMTelnetCon();
+
+    /**
+     * Runs the edits on {@link #fhc} asynchronously, with a bounded number of edits in flight.
+     */
+    private FHEMAsyncCon asyncFhc = newAsyncCon(fhc);
+
+    /**
+     * The devspecs of the devices which are polled, each requested separately and merged afterwards,
+     * like 'room=sensors TYPE=FileLog'. Set with the global variable FHEMDEVSPECS, separated by whitespace.
+     * If empty, all devices are requested at once.
+     */
+    private final List<String> devspecs = FHEMUtils.getGlobVar("FHEMDEVSPECS")
+            .map(specs -> Arrays.stream(specs.trim().split("\\s+")).filter(spec -> !spec.isEmpty())
+                    .collect(Collectors.toList()))
+            .orElse(Collections.emptyList());
+
+    /**
+     * Requests the jsonList2 of the {@link #devspecs} in parallel.
+     */
+    private final ExecutorService devspecRequests = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "FHEM devspec request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Coalesces saves of the FHEM configuration during layout edits.
+     */
+    private final SaveScheduler saveScheduler = new SaveScheduler(
+            FHEMUtils.getGlobVar("FHEMSAVEWINDOW").filter(window -> window.matches("\\d+"))
+                    .map(Long::parseLong).orElse(DEFAULT_SAVE_WINDOW),
+            () -> runBatch(Collections.singletonList("save")));
+    /**
+     * Queues the commands which switch actuators, coalescing them per device.
+     */
+    private final ActuatorQueue actuatorQueue = new ActuatorQueue(
+            (device, state) -> runBatchAsync(Collections.singletonList("set " + device + " " + state)));
+
+    /**
+     * The mutex, storing the user name and the ID of its timeout.
+     * Pending saves are flushed when it times out.
+     */
+    private final EditMutex mutex = new EditMutex(MUTEX_TIMEOUT, saveScheduler::flushLater);
+
+    /**
+     * The most recent model. Published models are evaluated completely before they are set here,
+     * and never changed afterwards, so readers see a consistent snapshot without locking.
+     */
+    private final AtomicReference<FHEMModel> model = new AtomicReference<>();
+
+    /**
+     * The generation of the most recent model, incremented whenever a new model is published.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The most recent model together with its generation, so that both can be read at once;
+     * null before the first model is published.
      */
-    private FHEMConnection fhc = new FHEMClientModeCon();
+    private volatile Published published;
 
     /**
-     * A cache for the currently most recent model.
+     * Serialized views of the most recent model, per combination of permissions and groups.
      */
-    private FHEMModel model;
+    private final SerializedModelCache serializedModels = new SerializedModelCache();
+
+    /**
+     * Computes the changes between published models.
+     */
+    private final ModelChangeTracker changeTracker = new ModelChangeTracker(CHANGE_HISTORY_SIZE);
+
+    /**
+     * Serializes the polls of jsonList2.
+     */
+    private final Object pollLock = new Object();
+
+    /**
+     * Guards evaluating and publishing the model, whether after a poll or after events from the inform stream.
+     */
+    private final Object publishLock = new Object();
+
+    /**
+     * The events which arrived during the current poll, to be applied to its result; null if no poll is running.
+     */
+    private List<FHEMEvent> eventsDuringPoll;
+
+    /**
+     * The rules file with which the most recent model was evaluated.
+     */
+    private volatile String rulesPath = "rules.json";
+
+    /**
+     * The fingerprint of jsonList2, the rules file and the events file from which the most recent model was built;
+     * null if it was not built from a poll.
+     */
+    private String modelFingerprint;
+
+    /**
+     * The fingerprints of the sensors of the most recent model which was built from jsonList2, by name.
+     */
+    private Map<String, String> sensorFingerprints = Collections.emptyMap();
+
+    /**
+     * Whether the most recent poll found FHEM, the rules or the events changed since the poll before.
+     * Guarded by the poll lock.
+     */
+    private boolean pollChanged = true;
+
+    /**
+     * The subscription to FHEM's inform stream, or null if the model is only polled.
+     */
+    private FHEMInformStream informStream;
+
+    /**
+     * Locks for writing the roomplan files, by room name.
+     */
+    private final Map<String, Object> roomplanLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Listeners which are notified whenever a new model is published.
+     */
+    private final List<Consumer<ModelChange>> modelListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Prevent construction of the Parser. Should only happen via getInstance().
@@ -89,23 +249,91 @@ public final class FHEMParser {
      */
     public FHEMParser setFHEMConnection(FHEMConnection con) {
         fhc = con;
+        final FHEMAsyncCon old = asyncFhc;
+        asyncFhc = newAsyncCon(con);
+        old.close();
         return this;
     }
 
+    private static FHEMAsyncCon newAsyncCon(FHEMConnection con) {
+        return new FHEMAsyncCon(con,
+                FHEMUtils.getGlobVar("FHEMMAXINFLIGHT").filter(max -> max.matches("\\d+"))
+                        .map(Integer::parseInt).orElse(DEFAULT_MAX_IN_FLIGHT),
+                FHEMUtils.getGlobVar("FHEMCOMMANDTIMEOUT").filter(timeout -> timeout.matches("\\d+"))
+                        .map(Long::parseLong).orElse(DEFAULT_COMMAND_TIMEOUT));
+    }
+
     /**
-     * Get a FHEM model as (optional) JSON, using the default rules to evaluate.
+     * Get the most recent FHEM model as (optional) JSON, evaluated with the default rules.
+     * The model is only parsed if none has been published yet; the periodic parser keeps it up to date.
      * Permissions are used to filter the outputted fhem model.
      * Groups are used to filter all rule information.
+     * The result is cached per combination of permissions and groups until a new model is published.
      *
      * @param permissions the permissions to apply to this model, filtering out everything else
      * @param groups the groups the caller is in
      * @return the filtered and evaluated model
      */
     public Optional<String> getFHEMModelJSON(List<String> permissions, List<String> groups) {
-        if (System.getProperty("user.home").contains("ra")) {
-            return getFHEMModelJSON(permissions, groups, "rules.json");
+        return getSerializedModel(permissions, groups).map(SerializedModel::getJson);
+    }
+
+    /**
+     * Get the most recent FHEM model as (optional) JSON like {@link #getFHEMModelJSON(List, List)},
+     * together with the generation of the model which was serialized.
+     *
+     * @param permissions the permissions to apply to this model, filtering out everything else
+     * @param groups the groups the caller is in
+     * @return the filtered and evaluated model and its generation
+     */
+    public Optional<SerializedModel> getSerializedModel(List<String> permissions, List<String> groups) {
+        if (published == null && !getFHEMModel().isPresent()) {
+            return Optional.empty();
         }
-        return getFHEMModelJSON(permissions, groups, "/home/pi/Server/rules.json");
+        final Published current = published;
+        return serializedModels.get(current.generation, permissions, groups,
+                () -> toJson(current.model, permissions, groups))
+                .map(json -> new SerializedModel(current.generation, json));
+    }
+
+    /**
+     * Register a listener which is notified with the changes whenever a new model is published.
+     * The listener is called on the thread which parsed the model, so it should return quickly.
+     *
+     * @param listener the listener
+     */
+    public void addModelListener(Consumer<ModelChange> listener) {
+        modelListeners.add(listener);
+    }
+
+    /**
+     * Remove a listener which was registered with {@link #addModelListener(Consumer)}.
+     *
+     * @param listener the listener
+     */
+    public void removeModelListener(Consumer<ModelChange> listener) {
+        modelListeners.remove(listener);
+    }
+
+    /**
+     * Get all changes of the model after a given generation, merged into one change.
+     * The change is not filtered; use a
+     * {@link webserver.fhemParser.fhemModel.serializers.ModelChangeSerializer ModelChangeSerializer} to serialize it.
+     *
+     * @param since the generation the caller already has
+     * @return the merged change, or empty if the generation is too old and the whole model has to be sent
+     */
+    public Optional<ModelChange> getModelChangesSince(long since) {
+        return changeTracker.since(since);
+    }
+
+    /**
+     * Get the generation of the most recent model. It changes whenever a new model is published.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation.get();
     }
 
     /**
@@ -125,11 +353,23 @@ public final class FHEMParser {
      * @return a serialized model which, when deserialized, contains only the permitted filelogs, sensors and rooms
      */
     public Optional<String> getFHEMModelJSON(List<String> permissions, List<String> groups, String pathToRules) {
+        /* Return the mapped Optional.of if present, empty otherwise */
+        return getFHEMModel(pathToRules).flatMap(fhemModel -> toJson(fhemModel, permissions, groups));
+    }
+
+    /**
+     * Serialize a model, filtered by permissions and groups.
+     *
+     * @param fhemModel   the model to serialize
+     * @param permissions a list of permissions which limit what information will be given to the caller
+     * @param groups      the groups the caller is in
+     * @return the serialized model
+     */
+    private static Optional<String> toJson(FHEMModel fhemModel, List<String> permissions, List<String> groups) {
         Gson gson = new GsonBuilder()
                 .registerTypeAdapter(FHEMModel.class, new ModelSerializer(permissions, groups))
                 .create();
-        /* Return the mapped Optional.of if present, empty otherwise */
-        return getFHEMModel(pathToRules).map(gson::toJson);
+        return Optional.of(gson.toJson(fhemModel));
     }
 
     /**
@@ -152,11 +392,45 @@ public final class FHEMParser {
      * @return a FHEMModel, if present
      */
     public Optional<FHEMModel> getFHEMModel(String pathToRules) {
+        synchronized (pollLock) {
+            synchronized (publishLock) {
+                eventsDuringPoll = new ArrayList<>();
+            }
+            try {
+                return parseFHEMModel(pathToRules);
+            } finally {
+                synchronized (publishLock) {
+                    eventsDuringPoll = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Poll FHEM with the default rules, like {@link #getFHEMModel()}, and tell whether anything was polled
+     * which was not there at the previous poll. Changes which were applied from the inform stream in between
+     * and rules which only changed with the time do not count.
+     *
+     * @return whether the input of the model changed since the previous poll, or empty if FHEM could not be parsed
+     */
+    public Optional<Boolean> pollForChanges() {
+        synchronized (pollLock) {
+            return getFHEMModel().map(fhemModel -> pollChanged);
+        }
+    }
+
+    /**
+     * Gets and parses a FHEM model, evaluates it and publishes it as the most recent model.
+     *
+     * @param pathToRules path to rules file
+     * @return a FHEMModel, if present
+     */
+    private Optional<FHEMModel> parseFHEMModel(String pathToRules) {
         Instant one = PRINT_TIME ? Instant.now() : null;
         if (System.getProperty("user.home").equals("/home/ra")) {
             mock = true;
         }
-        String jsonList2_str = "";
+        JsonList2 list;
         if (mock) {
             /* Mock jsonlist2! */
             String path = FHEMUtils.getGlobVar("FHEMMOCKDIR").orElse("/tmp/");
@@ -166,9 +440,12 @@ public final class FHEMParser {
             }
             String path = mockdir_opt.get();
             */
-            try {
-                jsonList2_str = new String(Files.readAllBytes(Paths.get(path + "/jsonList2.json")));
-            } catch (IOException e) {
+            final String logdir = path + "fhemlog/";
+            try (Reader reader = Files.newBufferedReader(Paths.get(path + "/jsonList2.json"))) {
+                /* point the log files at the mock dir, field by field while parsing */
+                list = JsonList2.parseFrom(reader,
+                        value -> value.replace("/opt/fhem/log/", logdir).replace("./log/", logdir));
+            } catch (IOException | JsonParseException e) {
                 System.err.println("FHEM might not be running or jsonList2 might not be accessible.");
                 System.err.println(
                         "You also might have to set global variables FHEMDIR "
@@ -179,15 +456,9 @@ public final class FHEMParser {
                         + " You should consider removing the password and instead blocking the port.");
                 return Optional.empty();
             }
-            if (PRINT_TIME) System.out.println("Got file at: " + Duration.between(one, Instant.now()).toMillis());
-            jsonList2_str = jsonList2_str.replaceAll("/opt/fhem/log/", path + "fhemlog/");
-            jsonList2_str = jsonList2_str.replaceAll("./log/", path + "fhemlog/");
-
-            if (PRINT_TIME)
-                System.out.println("Replaced paths at: " + Duration.between(one, Instant.now()).toMillis());
         } else {
             try {
-                jsonList2_str = fhc.getJsonList2();
+                list = requestJsonList2();
             } catch (FHEMNotFoundException e) {
                 System.err.println("FHEM might not be running or jsonList2 might not be accessible.");
                 System.err.println(
@@ -198,51 +469,284 @@ public final class FHEMParser {
                         + "Client Mode won't work if this is the case because of FHEM."
                         + " You should consider removing the password and instead blocking the port.");
                 return Optional.empty();
-            } catch (IOException e) {
+            } catch (IOException | JsonParseException e) {
                 e.printStackTrace();
+                return Optional.empty();
             }
-            if (PRINT_TIME) System.out.println("Got file at: " + Duration.between(one, Instant.now()).toMillis());
         }
-        JsonList2 list = JsonList2.parseFrom(jsonList2_str);
         if (PRINT_TIME)
             System.out.println("Parsed jsonlist at: " + Duration.between(one, Instant.now()).toMillis());
-        FHEMModel fhemModel = list.toFHEMModel();
+        final String fingerprint = list.getFingerprint().map(payload -> payload
+                + "|" + FHEMUtils.getFileVersion(pathToRules) + "|" + FHEMUtils.getFileVersion(EVENTS_PATH))
+                .orElse(null);
+        final FHEMModel previous;
+        final Map<String, String> previousFingerprints;
+        synchronized (publishLock) {
+            previous = model.get();
+            pollChanged = fingerprint == null || !fingerprint.equals(modelFingerprint);
+            if (previous != null && !pollChanged) {
+                /* FHEM, the rules and the events are as before: only the time has passed */
+                return Optional.of(refresh(previous, pathToRules));
+            }
+            previousFingerprints = sensorFingerprints;
+        }
+        /* only the sensors whose devices changed are parsed, the others are copied from the previous model */
+        FHEMModel fhemModel = list.toFHEMModel(previous, previousFingerprints);
+        final Map<String, String> fingerprints = list.getSensorFingerprints();
         if (PRINT_TIME)
             System.out.println("Made fhem model at: " + Duration.between(one, Instant.now()).toMillis());
-        model = fhemModel;
-        RuleChecker.getInstance().evaluate(model, pathToRules);
-        model.setEventList(new EventList("events.txt"));
+        synchronized (publishLock) {
+            /* readings which changed while jsonList2 was fetched and parsed might be missing in it */
+            for (FHEMEvent event : eventsDuringPoll) {
+                applyEvent(fhemModel, event);
+            }
+            rulesPath = pathToRules;
+            modelFingerprint = fingerprint;
+            sensorFingerprints = fingerprints;
+            RuleChecker.getInstance().evaluate(fhemModel, pathToRules);
+            fhemModel.setEventList(new EventList(EVENTS_PATH));
+            final FHEMModel current = model.get();
+            if (current != null) {
+                fhemModel.shareUnchangedSensors(current, name -> fingerprints.containsKey(name)
+                        && fingerprints.get(name).equals(previousFingerprints.get(name)));
+            }
+            publish(fhemModel);
+        }
         return Optional.ofNullable(fhemModel);
     }
 
     /**
-     * Sets the sensor position of a specific sensor in FHEM.
-     * This executes a perl command on the server.
+     * Evaluate the time dependent rules again on a copy of a model whose input did not change,
+     * and publish the copy if that changed any rule information or if calendar events ended.
+     * Has to be called while holding the publish lock.
      *
-     * @param x          x position in %
-     * @param y          y position in %
-     * @param sensorName name of sensor
-     * @return whether the operation succeeded
+     * @param current     the most recent model
+     * @param pathToRules path to rules file
+     * @return the most recent model afterwards
+     */
+    private FHEMModel refresh(FHEMModel current, String pathToRules) {
+        final FHEMModel next = current.copyWithoutRuleInfos();
+        final EventList events = current.getEventList() == null ? null : current.getEventList().current();
+        next.setEventList(events);
+        RuleChecker.getInstance().evaluateTimeDependent(next, pathToRules);
+        next.shareUnchangedSensors(current, name -> true);
+        if (events != current.getEventList()) {
+            publish(next);
+            return next;
+        }
+        return publishIfChanged(next) ? next : current;
+    }
+
+    /**
+     * Requests jsonList2 of the {@link #devspecs} in parallel and merges them,
+     * or of all devices if there are no devspecs.
+     * Each jsonList2 is parsed while it is still being received.
+     *
+     * @return the merged jsonList2
+     *
+     * @throws IOException           if a request failed
+     * @throws FHEMNotFoundException if FHEM could not be found
      */
-    public synchronized boolean setSensorPosition(int x, int y, String sensorName) {
-        if ((x > 100 || x < 0) || (y > 100 || y < 0)) {
-            x = 50;
-            y = 50;
-            System.err.printf("Incorrect percent values for coordinates! x: %d, y: %d", x, y);
+    private JsonList2 requestJsonList2() throws IOException, FHEMNotFoundException {
+        if (devspecs.isEmpty()) {
+            return requestJsonList2("");
+        }
+        final List<CompletableFuture<JsonList2>> requests = new ArrayList<>();
+        for (String devspec : devspecs) {
+            requests.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return requestJsonList2(devspec);
+                } catch (IOException | FHEMNotFoundException e) {
+                    throw new CompletionException(e);
+                }
+            }, devspecRequests));
+        }
+        final List<JsonList2> lists = new ArrayList<>();
+        try {
+            for (CompletableFuture<JsonList2> request : requests) {
+                lists.add(request.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof FHEMNotFoundException) {
+                throw (FHEMNotFoundException) e.getCause();
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
         }
+        return JsonList2.merge(lists);
+    }
 
-        if (!model.sensorExists(sensorName)) {
+    private JsonList2 requestJsonList2(String devspec) throws IOException, FHEMNotFoundException {
+        try (Reader reader = fhc.openJsonList2(devspec)) {
+            return JsonList2.parseFrom(reader, UnaryOperator.identity());
+        }
+    }
+
+    /**
+     * Subscribe to FHEM's inform stream, so that changed readings are applied to the model as soon as they happen.
+     * Changes of the configuration of FHEM which cannot be applied like readings, and reconnects of the stream,
+     * make the model be parsed again: they ask for an early poll, which runs on a worker thread.
+     * Does nothing when mocking, or if the global variable FHEMINFORM is set to 'off'.
+     *
+     * @param requestPoll asks for the model to be parsed again as soon as possible, without waiting for it
+     * @return true if the model is kept up to date by events, false if it has to be polled
+     */
+    public boolean subscribeToEvents(Runnable requestPoll) {
+        if (mock || FHEMUtils.getGlobVar("FHEMINFORM").filter("off"::equals).isPresent()) {
             return false;
         }
+        synchronized (this) {
+            if (informStream == null) {
+                informStream = new FHEMInformStream("localhost", FHEMUtils.getFHEMPort(),
+                        events -> applyEvents(events, requestPoll), requestPoll).start();
+            }
+        }
+        return true;
+    }
 
-        try {
-            return fhc.perlCommand("attr " + sensorName + " coordX " + x)
-                    && fhc.perlCommand("attr " + sensorName + " coordY " + y)
-                    && fhc.perlCommand("save");
-        } catch (IOException e) {
-            System.err.println("Couldn't talk to FHEM via Client Mode!");
+    /**
+     * Apply a batch of events from the inform stream to a copy of the most recent model,
+     * evaluate the copy and publish it as the new model.
+     * Saves of the configuration are ignored. If an event changes the configuration of FHEM
+     * in a way which cannot be applied to the model, one poll is requested for the whole batch.
+     *
+     * @param events      the events, in order of arrival
+     * @param requestPoll asks for the model to be parsed again
+     */
+    private void applyEvents(List<FHEMEvent> events, Runnable requestPoll) {
+        boolean reparse = false;
+        synchronized (publishLock) {
+            if (eventsDuringPoll != null) {
+                eventsDuringPoll.addAll(events);
+            }
+            final FHEMModel current = model.get();
+            FHEMModel next = null;
+            boolean changed = false;
+            for (FHEMEvent event : events) {
+                if (event.isSave()) {
+                    continue;
+                }
+                final Optional<String[]> attribute_opt = event.getAttributeChange();
+                if (event.isStructural() && !attribute_opt.filter(
+                        attribute -> FHEMDevice.isApplicableAttribute(attribute[1])).isPresent()) {
+                    reparse = true;
+                    continue;
+                }
+                final String device = attribute_opt.map(attribute -> attribute[0]).orElse(event.getDevice());
+                if (current != null && current.sensorExists(device)) {
+                    if (next == null) {
+                        next = current.copyWithoutRuleInfos();
+                    }
+                    changed |= applyEvent(next, event);
+                }
+            }
+            if (changed) {
+                RuleChecker.getInstance().evaluate(next, rulesPath);
+                next.shareUnchangedSensors(current, name -> true);
+                publish(next);
+            }
+        }
+        if (reparse) {
+            requestPoll.run();
+        }
+    }
+
+    /**
+     * Apply a changed reading or coordinate to the sensor of a model, if the device is a sensor in this model.
+     * Other changes of the configuration are not applied.
+     *
+     * @param fhemModel the model
+     * @param event     the event from the inform stream
+     * @return true if the sensor changed
+     */
+    private static boolean applyEvent(FHEMModel fhemModel, FHEMEvent event) {
+        if (event.isStructural()) {
+            final Optional<String[]> attribute_opt = event.getAttributeChange();
+            if (!attribute_opt.isPresent()) {
+                return false;
+            }
+            final String[] attribute = attribute_opt.get();
+            final Optional<FHEMSensor> sensor_opt = fhemModel.getSensorByName(attribute[0]);
+            return sensor_opt.isPresent() && FHEMDevice.applyAttribute(sensor_opt.get(), attribute[1], attribute[2]);
+        }
+        Optional<FHEMSensor> sensor_opt = fhemModel.getSensorByName(event.getDevice());
+        return sensor_opt.isPresent() && FHEMDevice.applyReading(sensor_opt.get(), event.getReading(), event.getValue());
+    }
+
+    /**
+     * Publish a new generation of the model: make it the most recent model, compute the change
+     * to the previous generation and notify the listeners.
+     * Has to be called while holding the publish lock, so that generations are published in order.
+     *
+     * @param fhemModel the evaluated model, which must not be changed afterwards
+     */
+    private void publish(FHEMModel fhemModel) {
+        model.set(fhemModel);
+        final ModelChange change = changeTracker.update(generation.incrementAndGet(), fhemModel);
+        published = new Published(change.getGeneration(), fhemModel);
+        modelListeners.forEach(listener -> listener.accept(change));
+    }
+
+    /**
+     * Publish a model like {@link #publish(FHEMModel)}, but only if it differs from the previous generation.
+     * Has to be called while holding the publish lock.
+     *
+     * @param fhemModel the evaluated model, which must not be changed afterwards if it is published
+     * @return true if the model was published
+     */
+    private boolean publishIfChanged(FHEMModel fhemModel) {
+        final Optional<ModelChange> change_opt = changeTracker.updateIfChanged(generation.get() + 1, fhemModel);
+        if (!change_opt.isPresent()) {
             return false;
         }
+        model.set(fhemModel);
+        published = new Published(generation.incrementAndGet(), fhemModel);
+        modelListeners.forEach(listener -> listener.accept(change_opt.get()));
+        return true;
+    }
+
+    /**
+     * Sets the sensor position of a specific sensor in FHEM.
+     * This executes a perl command on the server.
+     *
+     * @param x          x position in %
+     * @param y          y position in %
+     * @param sensorName name of sensor
+     * @return whether the operation succeeded, once FHEM answered
+     */
+    public CompletableFuture<Boolean> setSensorPosition(int x, int y, String sensorName) {
+        return setSensorPositions(Collections.singletonList(new SensorPosition(sensorName, x, y)));
+    }
+
+    /**
+     * Sets the sensor positions of several sensors in FHEM.
+     * All changes are sent to FHEM in one batch; the configuration is saved by the save scheduler,
+     * together with the other edits of the next few seconds, or when the mutex is released.
+     *
+     * @param positions the new positions
+     * @return whether the operation succeeded for all sensors, once FHEM answered;
+     * if a sensor does not exist, nothing is changed
+     */
+    public CompletableFuture<Boolean> setSensorPositions(List<SensorPosition> positions) {
+        final List<String> commands = new ArrayList<>();
+        for (SensorPosition position : positions) {
+            int x = position.getCoordX();
+            int y = position.getCoordY();
+            if ((x > 100 || x < 0) || (y > 100 || y < 0)) {
+                System.err.printf("Incorrect percent values for coordinates! x: %d, y: %d", x, y);
+                x = 50;
+                y = 50;
+            }
+            if (position.getSensorName() == null || !model.get().sensorExists(position.getSensorName())) {
+                return CompletableFuture.completedFuture(false);
+            }
+            commands.add("attr " + position.getSensorName() + " coordX " + x);
+            commands.add("attr " + position.getSensorName() + " coordY " + y);
+        }
+        return runBatchAsync(commands).thenApply(success -> success && saveScheduler.request());
     }
 
     /**
@@ -253,11 +757,14 @@ public final class FHEMParser {
      * @param content  the content of the file
      * @return whether the operation succeeded
      */
-    public synchronized boolean setRoomplan(String roomName, String content) {
-        Optional<FHEMRoom> room_opt = model.getRoomByName(roomName);
+    public boolean setRoomplan(String roomName, String content) {
+        Optional<FHEMRoom> room_opt = model.get().getRoomByName(roomName);
         if (room_opt.isPresent()) {
             FHEMRoom room = room_opt.get();
-            return room.setRoomplan(content);
+            /* writes to the same room are serialized, writes to different rooms do not wait for each other */
+            synchronized (roomplanLocks.computeIfAbsent(roomName, name -> new Object())) {
+                return room.setRoomplan(content);
+            }
         }
         return false;
     }
@@ -270,10 +777,10 @@ public final class FHEMParser {
      * @return the roomplan, if caller's permissions suffice.
      */
     public Optional<String> getRoomplan(String roomName, List<String> permissions) {
-        if (model == null) {
+        if (model.get() == null) {
             getFHEMModel();
         }
-        Optional<FHEMRoom> room_opt = model.getRoomByName(roomName);
+        Optional<FHEMRoom> room_opt = model.get().getRoomByName(roomName);
         if (!room_opt.isPresent()) {
             return Optional.empty();
         }
@@ -295,7 +802,7 @@ public final class FHEMParser {
      * @return the roomplan, if caller's permissions suffice.
      */
     public Optional<String> getRoomplan(String roomName, long hash, List<String> permissions) {
-        Optional<FHEMRoom> room_opt = model.getRoomByName(roomName);
+        Optional<FHEMRoom> room_opt = model.get().getRoomByName(roomName);
         if (!room_opt.isPresent()) {
             return Optional.empty();
         }
@@ -329,15 +836,47 @@ public final class FHEMParser {
      * @return an optional String - the json representation of the timeserie
      */
     public Optional<String> getTimeserie(long startTime, long endTime, String fileLogID, List<String> permissions) {
-        for (Iterator<FHEMFileLog> it = model.eachLog(); it.hasNext(); ) {
-            FHEMFileLog log = it.next();
-            if (log.getName().equals(fileLogID)) {
-                if (log.isPermitted(permissions)) {
-                    return log.subSection(startTime, endTime);
-                }
-            }
-        }
-        return Optional.empty();
+        return getPermittedLog(fileLogID, permissions).flatMap(log -> log.subSection(startTime, endTime));
+    }
+
+    /**
+     * Writes a specific timeserie by fileLog, if the callers permissions suffice.
+     * The json representation is written piece by piece, so it is never held in memory as a whole.
+     *
+     * @param startTime   start time
+     * @param endTime     end time
+     * @param fileLogID   ID of filelog (name)
+     * @param permissions permissions of caller
+     * @param writer      the target of the json representation
+     * @return true if the timeserie was written, false if it is not permitted or could not be read
+     */
+    public boolean writeTimeserie(long startTime, long endTime, String fileLogID, List<String> permissions,
+                                  Appendable writer) {
+        Optional<FHEMFileLog> log_opt = getPermittedLog(fileLogID, permissions);
+        return log_opt.isPresent() && log_opt.get().writeSubSection(startTime, endTime, writer);
+    }
+
+    /**
+     * Gets the version of a specific fileLog, if the callers permissions suffice.
+     * The version changes whenever the logfile changes, so it can be used to tell whether a timeserie is outdated.
+     *
+     * @param fileLogID   ID of filelog (name)
+     * @param permissions permissions of caller
+     * @return an optional String - the version of the logfile
+     */
+    public Optional<String> getTimeserieVersion(String fileLogID, List<String> permissions) {
+        return getPermittedLog(fileLogID, permissions).map(FHEMFileLog::getVersion);
+    }
+
+    /**
+     * Finds a fileLog by name, if the callers permissions suffice.
+     *
+     * @param fileLogID   ID of filelog (name)
+     * @param permissions permissions of caller
+     * @return the filelog, if it exists and is permitted
+     */
+    private Optional<FHEMFileLog> getPermittedLog(String fileLogID, List<String> permissions) {
+        return model.get().getLogByName(fileLogID).filter(log -> log.isPermitted(permissions));
     }
 
     /**
@@ -346,54 +885,149 @@ public final class FHEMParser {
      * @param username the username
      * @return the ID of a mutex, if successful
      */
-    public synchronized Optional<Long> getMutex(String username) {
-        if (mutex.isEmpty()) {
-            mutex = username;
-            long timer = Main.VERTX.setTimer(MUTEX_TIMEOUT, event -> releaseMutex(username));
+    public Optional<Long> getMutex(String username) {
+        Optional<Long> mutexID = mutex.acquire(username);
+        if (mutexID.isPresent()) {
             System.out.println("Parser: Set Mutex for user: " + username);
-            return Optional.of(timer);
         } else {
             System.out.println("Parser: Mutex is unavailable");
-            return Optional.empty();
         }
+        return mutexID;
     }
 
     /**
      * Releases the mutex of a given username.
+     * A pending save of the FHEM configuration is performed before this returns.
      *
      * @param username the username
-     * @return true if the user had the mutex, false otherwise
+     * @param mutexID  the ID of the mutex, as returned by {@link #getMutex(String)}
+     * @return true if the user had the mutex with this ID, false otherwise
      */
-    public synchronized boolean releaseMutex(String username) {
-        if (mutex.equals(username)) {
-            mutex = "";
+    public boolean releaseMutex(String username, long mutexID) {
+        if (mutex.release(username, mutexID)) {
             System.out.println("Parser: released Mutex for user: " + username);
+            saveScheduler.flush();
             return true;
         } else {
-            System.err.println("Parser: no mutex for user: " + username);
+            System.err.println("Parser: no mutex for user: " + username + " with ID: " + mutexID);
             return false;
         }
     }
 
     /**
      * Set a FHEM actuator to a given state, checking for permissions.
+     * Requests for the same actuator are queued, and a newer state replaces one which was not sent yet.
      *
      * @param sensorName  the name of the sensor to set
      * @param state       the state to set the sensor to
      * @param permissions the permissions of the caller
-     * @return true if the operation succeeded
+     * @return the state FHEM settled on, once no more requests were queued for the actuator;
+     * empty if the caller is not permitted or FHEM did not accept any of the requests
      */
-    public synchronized boolean setActuator(String sensorName, boolean state, List<String> permissions) {
+    public CompletableFuture<Optional<String>> setActuator(String sensorName, boolean state, List<String> permissions) {
         String set_state = (state ? "on" : "off");
-        if (model.getSensorByName(sensorName).isPresent()
-                && model.getSensorByName(sensorName).get().isPermittedSwitch(permissions)) {
-            try {
-                return fhc.perlCommand("set " + sensorName + " " + set_state);
-            } catch (IOException e) {
-                System.err.println("Couldn't talk to FHEM via Client Mode!");
-            }
+        Optional<FHEMSensor> sensor_opt = model.get().getSensorByName(sensorName);
+        if (sensor_opt.isPresent() && sensor_opt.get().isPermittedSwitch(permissions)) {
+            return actuatorQueue.request(sensorName, set_state);
         }
-        return false;
+        return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    /**
+     * Executes edits in FHEM in one round trip, blocking until FHEM answered.
+     * Must not be called on a thread of the FHEM connection.
+     *
+     * @param commands the FHEM commands to execute, in order
+     * @return true if no command printed anything ('no news is good news')
+     */
+    private boolean runBatch(List<String> commands) {
+        return runBatchAsync(commands).join();
+    }
+
+    /**
+     * Executes edits in FHEM in one round trip, without waiting for FHEM.
+     *
+     * @param commands the FHEM commands to execute, in order
+     * @return true if no command printed anything ('no news is good news'), false if FHEM could not be reached
+     */
+    private CompletableFuture<Boolean> runBatchAsync(List<String> commands) {
+        return asyncFhc.perlCommandBatch(commands).handle((outputs, error) -> {
+            if (error != null) {
+                System.err.println("Couldn't talk to FHEM! " + error.getMessage());
+                return false;
+            }
+            boolean success = true;
+            for (int i = 0; i < outputs.size(); i++) {
+                if (!outputs.get(i).isEmpty()) {
+                    System.err.println("FHEM: '" + commands.get(i) + "' failed: " + outputs.get(i));
+                    success = false;
+                }
+            }
+            return success;
+        });
+    }
+
+    /**
+     * Get the number of edits which are currently sent to FHEM and not yet answered.
+     *
+     * @return the number of edits in flight
+     */
+    public int getCommandsInFlight() {
+        return asyncFhc.getInFlight();
+    }
+
+    /**
+     * Get the number of edits which wait for other edits to be answered by FHEM.
+     *
+     * @return the number of waiting edits
+     */
+    public int getCommandsWaiting() {
+        return asyncFhc.getWaiting();
+    }
+
+    /**
+     * Get the number of edits which FHEM did not answer in time.
+     *
+     * @return the number of timed out edits
+     */
+    public long getCommandsTimedOut() {
+        return asyncFhc.getTimedOut();
+    }
+
+    /**
+     * Get the number of actuator commands which were replaced by a newer one before they were sent.
+     *
+     * @return the number of coalesced actuator commands
+     */
+    public long getActuatorsCoalesced() {
+        return actuatorQueue.getCoalesced();
+    }
+
+    /**
+     * Get the number of saves of the FHEM configuration which were requested by edits.
+     *
+     * @return the number of requested saves
+     */
+    public long getRequestedSaves() {
+        return saveScheduler.getRequested();
+    }
+
+    /**
+     * Get the number of saves of the FHEM configuration which were actually performed.
+     *
+     * @return the number of performed saves
+     */
+    public long getPerformedSaves() {
+        return saveScheduler.getPerformed();
+    }
+
+    /**
+     * Get the number of saves of the FHEM configuration which failed and had to be repeated.
+     *
+     * @return the number of failed saves
+     */
+    public long getFailedSaves() {
+        return saveScheduler.getFailed();
     }
 
     /**
@@ -402,6 +1036,19 @@ public final class FHEMParser {
      * @return the set mutex
      */
     public String readMutex() {
-        return mutex;
+        return mutex.getOwner();
+    }
+
+    /**
+     * A published model and its generation.
+     */
+    private static final class Published {
+        private final long generation;
+        private final FHEMModel model;
+
+        private Published(long generation, FHEMModel model) {
+            this.generation = generation;
+            this.model = model;
+        }
     }
 }
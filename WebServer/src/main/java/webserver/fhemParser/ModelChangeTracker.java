@@ -0,0 +1,194 @@
+package webserver.fhemParser;
+
+import com.google.gson.Gson;
+import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemModel.ModelChange;
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
+import webserver.ruleCheck.RuleEvent;
+import webserver.ruleCheck.RuleSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * This class computes what changed between consecutively published models,
+ * and keeps the most recent changes so that they can be merged into a delta since an older generation.
+ * Sensors are compared by identity first, since unchanged sensors are shared between models,
+ * and otherwise by their complete, unfiltered json representation;
+ * snapshots are compared by rule name and time stamp, history events by identity.
+ * All methods are synchronized.
+ */
+final class ModelChangeTracker {
+    private final Gson gson = new Gson();
+    /**
+     * The maximum number of changes to keep.
+     */
+    private final int capacity;
+    /**
+     * The most recent changes, the oldest first.
+     */
+    private final Deque<ModelChange> changes = new ArrayDeque<>();
+    /**
+     * The json representation of every sensor of the previous model, by name.
+     */
+    private Map<String, String> sensorFingerprints = new HashMap<>();
+    /**
+     * The sensors of the previous model, by name.
+     */
+    private Map<String, FHEMSensor> sensors = new HashMap<>();
+    /**
+     * The snapshots of the previous model, as rule name and time stamp.
+     */
+    private Set<String> snapshotKeys = new HashSet<>();
+    /**
+     * The history events of the previous model.
+     */
+    private Set<RuleEvent> events = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Construct a tracker without a previous model.
+     *
+     * @param capacity the maximum number of changes to keep for deltas
+     */
+    ModelChangeTracker(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Compare a new model to the previous one and remember it for the next comparison.
+     *
+     * @param generation the generation of the new model
+     * @param model      the new, evaluated model
+     * @return the change from the previous model to the new one
+     */
+    synchronized ModelChange update(long generation, FHEMModel model) {
+        return compare(generation, model, false).get();
+    }
+
+    /**
+     * Compare a new model to the previous one and remember it for the next comparison,
+     * but only record the change if there is one.
+     *
+     * @param generation the generation of the new model, if it changed
+     * @param model      the new, evaluated model
+     * @return the change from the previous model to the new one, or empty if nothing changed
+     */
+    synchronized Optional<ModelChange> updateIfChanged(long generation, FHEMModel model) {
+        return compare(generation, model, true);
+    }
+
+    private Optional<ModelChange> compare(long generation, FHEMModel model, boolean onlyIfChanged) {
+        final Map<String, String> newFingerprints = new HashMap<>();
+        final Map<String, FHEMSensor> newSensors = new HashMap<>();
+        final List<FHEMSensor> changed = new ArrayList<>();
+        for (Iterator<FHEMSensor> it = model.eachSensor(); it.hasNext(); ) {
+            final FHEMSensor sensor = it.next();
+            final String fingerprint = sensors.get(sensor.getName()) == sensor
+                    ? sensorFingerprints.get(sensor.getName()) : gson.toJson(sensor);
+            newFingerprints.put(sensor.getName(), fingerprint);
+            newSensors.put(sensor.getName(), sensor);
+            if (!fingerprint.equals(sensorFingerprints.get(sensor.getName()))) {
+                changed.add(sensor);
+            }
+        }
+        final List<FHEMSensor> removed = new ArrayList<>();
+        for (Map.Entry<String, FHEMSensor> entry : sensors.entrySet()) {
+            if (!newSensors.containsKey(entry.getKey())) {
+                removed.add(entry.getValue());
+            }
+        }
+
+        final Set<String> newSnapshotKeys = new HashSet<>();
+        final List<RuleSnapshot> addedSnapshots = new ArrayList<>();
+        if (model.getSnapshots() != null) {
+            for (RuleSnapshot snapshot : model.getSnapshots()) {
+                final String key = snapshot.getRuleName() + "@" + snapshot.getLastStamp();
+                newSnapshotKeys.add(key);
+                if (!snapshotKeys.contains(key)) {
+                    addedSnapshots.add(snapshot);
+                }
+            }
+        }
+
+        final Set<RuleEvent> newEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<RuleEvent> addedEvents = new ArrayList<>();
+        if (model.getHistory() != null) {
+            for (RuleEvent event : model.getHistory().getEvents()) {
+                newEvents.add(event);
+                if (!events.contains(event)) {
+                    addedEvents.add(event);
+                }
+            }
+        }
+
+        sensorFingerprints = newFingerprints;
+        sensors = newSensors;
+        snapshotKeys = newSnapshotKeys;
+        events = newEvents;
+        final ModelChange change = new ModelChange(generation, changed, removed, addedSnapshots, addedEvents);
+        if (onlyIfChanged && change.isEmpty()) {
+            return Optional.empty();
+        }
+        changes.addLast(change);
+        if (changes.size() > capacity) {
+            changes.removeFirst();
+        }
+        return Optional.of(change);
+    }
+
+    /**
+     * Merge all changes after a given generation into one change.
+     * Sensors which changed several times appear once, in their latest version.
+     *
+     * @param since the generation the caller already has
+     * @return the merged change, or empty if the generation is too old (or unknown) to build a delta
+     */
+    synchronized Optional<ModelChange> since(long since) {
+        if (changes.isEmpty()) {
+            return Optional.empty();
+        }
+        final long latest = changes.getLast().getGeneration();
+        if (since > latest || since < changes.getFirst().getGeneration() - 1) {
+            return Optional.empty();
+        }
+        final Map<String, FHEMSensor> changed = new LinkedHashMap<>();
+        final Map<String, FHEMSensor> removed = new LinkedHashMap<>();
+        final Map<String, RuleSnapshot> newSnapshots = new LinkedHashMap<>();
+        final Set<RuleEvent> newEvents = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<RuleEvent> orderedEvents = new ArrayList<>();
+        for (ModelChange change : changes) {
+            if (change.getGeneration() <= since) {
+                continue;
+            }
+            for (FHEMSensor sensor : change.getChangedSensors()) {
+                removed.remove(sensor.getName());
+                changed.put(sensor.getName(), sensor);
+            }
+            for (FHEMSensor sensor : change.getRemovedSensors()) {
+                changed.remove(sensor.getName());
+                removed.put(sensor.getName(), sensor);
+            }
+            for (RuleSnapshot snapshot : change.getNewSnapshots()) {
+                newSnapshots.put(snapshot.getRuleName() + "@" + snapshot.getLastStamp(), snapshot);
+            }
+            for (RuleEvent event : change.getNewEvents()) {
+                if (newEvents.add(event)) {
+                    orderedEvents.add(event);
+                }
+            }
+        }
+        return Optional.of(new ModelChange(latest, new ArrayList<>(changed.values()), new ArrayList<>(removed.values()),
+                new ArrayList<>(newSnapshots.values()), orderedEvents));
+    }
+}
@@ -0,0 +1,189 @@
+package webserver.fhemParser;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * This class polls FHEM for a new model, adapting the interval between polls to what it observes.
+ * Polls never overlap: a poll is only started when the previous one has finished, and ticks which find
+ * a poll still running are skipped and counted.
+ * The interval stays between the configured bounds. It shrinks while polls find changes and grows while
+ * they do not, and it is never shorter than a few times the cost of a poll, so a slow FHEM is not kept busy.
+ * An early poll can be requested, e.g. when FHEM announced a change; requests during a poll are collapsed
+ * into one poll after it.
+ */
+public final class PollScheduler {
+    /**
+     * The factor by which the interval grows after a poll without changes.
+     */
+    private static final double BACKOFF = 1.5;
+    /**
+     * The minimum ratio between the interval and the duration of a poll.
+     */
+    private static final int COST_FACTOR = 4;
+
+    private final Vertx vertx;
+    private final long minInterval;
+    private final long maxInterval;
+    /**
+     * Polls once, returns whether the data changed, or empty if polling failed.
+     */
+    private final Supplier<Optional<Boolean>> poll;
+    /**
+     * Runs on the event loop if a poll failed; polling stops afterwards.
+     */
+    private final Runnable onFailure;
+    /**
+     * The context on which the timer, the requests and the results of the polls are handled.
+     */
+    private final Context context;
+
+    private volatile long interval;
+    private volatile long lastDuration = 0;
+    private boolean running = false;
+    private boolean requested = false;
+    private long nextPoll = 0;
+    private volatile long timerID = -1;
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong changedPolls = new AtomicLong();
+    private final AtomicLong skippedTicks = new AtomicLong();
+
+    /**
+     * Construct a scheduler which does not poll before {@link #start()}.
+     *
+     * @param vertx       the vertx instance which runs the timer and the polls
+     * @param minInterval the shortest interval between two polls, in milliseconds; also the tick of the timer
+     * @param maxInterval the longest interval between two polls, in milliseconds
+     * @param poll        polls once, returns whether the data changed, or empty if polling failed
+     * @param onFailure   runs if a poll failed; polling stops afterwards
+     */
+    public PollScheduler(Vertx vertx, long minInterval, long maxInterval,
+                         Supplier<Optional<Boolean>> poll, Runnable onFailure) {
+        this.vertx = vertx;
+        this.minInterval = Math.max(1, minInterval);
+        this.maxInterval = Math.max(this.minInterval, maxInterval);
+        this.poll = poll;
+        this.onFailure = onFailure;
+        this.context = vertx.getOrCreateContext();
+        this.interval = this.minInterval;
+    }
+
+    /**
+     * Start ticking. The first poll happens on the first tick.
+     *
+     * @return this scheduler, enabling builder style
+     */
+    public PollScheduler start() {
+        context.runOnContext(v -> timerID = vertx.setPeriodic(minInterval, id -> tick()));
+        return this;
+    }
+
+    /**
+     * Poll as soon as possible, without waiting for the interval. If a poll is running, the next one starts
+     * right after it. Several requests before that poll starts result in one poll.
+     * Does nothing if this scheduler was not started or was stopped.
+     */
+    public void requestPoll() {
+        context.runOnContext(v -> {
+            if (timerID == -1) {
+                return;
+            }
+            if (running) {
+                requested = true;
+                return;
+            }
+            nextPoll = 0;
+            tick();
+        });
+    }
+
+    /**
+     * Stop ticking. A running poll is finished, but no new one is started.
+     */
+    public void stop() {
+        context.runOnContext(v -> {
+            if (timerID != -1) {
+                vertx.cancelTimer(timerID);
+                timerID = -1;
+            }
+        });
+    }
+
+    private void tick() {
+        if (running) {
+            skippedTicks.incrementAndGet();
+            return;
+        }
+        if (System.currentTimeMillis() < nextPoll) {
+            return;
+        }
+        running = true;
+        vertx.<Optional<Boolean>>executeBlocking(future -> {
+            final long start = System.currentTimeMillis();
+            final Optional<Boolean> changed = poll.get();
+            lastDuration = System.currentTimeMillis() - start;
+            future.complete(changed);
+        }, false, res -> {
+            running = false;
+            if (res.failed() || !res.result().isPresent()) {
+                stop();
+                onFailure.run();
+                return;
+            }
+            polls.incrementAndGet();
+            final boolean changed = res.result().get();
+            if (changed) {
+                changedPolls.incrementAndGet();
+            }
+            interval = adapt(interval, changed, lastDuration);
+            nextPoll = requested ? 0 : System.currentTimeMillis() + interval;
+            if (requested && timerID != -1) {
+                requested = false;
+                tick();
+            }
+        });
+    }
+
+    /**
+     * Compute the next interval.
+     *
+     * @param current  the current interval
+     * @param changed  whether the last poll found changes
+     * @param duration the duration of the last poll
+     * @return the next interval, within the bounds
+     */
+    private long adapt(long current, boolean changed, long duration) {
+        long next = changed ? current / 2 : (long) (current * BACKOFF);
+        next = Math.max(next, COST_FACTOR * duration);
+        return Math.min(maxInterval, Math.max(minInterval, next));
+    }
+
+    /**
+     * Get the interval after which the next poll is started, once the current one has finished.
+     *
+     * @return the current interval between polls, in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    public long getLastDuration() {
+        return lastDuration;
+    }
+
+    public long getPolls() {
+        return polls.get();
+    }
+
+    public long getChangedPolls() {
+        return changedPolls.get();
+    }
+
+    public long getSkippedTicks() {
+        return skippedTicks.get();
+    }
+}
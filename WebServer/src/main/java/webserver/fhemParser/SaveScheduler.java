@@ -0,0 +1,127 @@
+package webserver.fhemParser;
+
+import webserver.Main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class coalesces requests to save the FHEM configuration.
+ * FHEM rewrites its whole configuration file on every save, so while a layout is being edited,
+ * the first request opens a window and all requests within it are served by a single save at its end.
+ * The window can be closed early by {@link #flush()}, e.g. when the editing user releases the mutex.
+ * All methods are thread safe.
+ */
+final class SaveScheduler {
+    /**
+     * Placeholder for the timer ID while no save is scheduled.
+     */
+    private static final long NONE = -1;
+    /**
+     * The time in milliseconds during which requests are coalesced; 0 saves on every request.
+     */
+    private final long window;
+    /**
+     * Saves the configuration, returns false if that failed.
+     */
+    private final BooleanSupplier save;
+    /**
+     * True if a save was requested but not yet performed.
+     */
+    private boolean dirty = false;
+    /**
+     * The ID of the timer which closes the current window, or {@link #NONE}.
+     */
+    private long timerID = NONE;
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong performed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Construct a scheduler without pending saves.
+     *
+     * @param window the time in milliseconds during which requests are coalesced; 0 saves on every request
+     * @param save   saves the configuration, returns false if that failed
+     */
+    SaveScheduler(long window, BooleanSupplier save) {
+        this.window = window;
+        this.save = save;
+    }
+
+    /**
+     * Request a save. It is performed at the end of the current window, or right away on a worker thread
+     * if there is no window. Never blocks, so it can be called on any thread.
+     *
+     * @return true; failed saves are counted and tried again with the next window
+     */
+    boolean request() {
+        requested.incrementAndGet();
+        if (window <= 0) {
+            synchronized (this) {
+                dirty = true;
+            }
+            flushLater();
+            return true;
+        }
+        schedule();
+        return true;
+    }
+
+    /**
+     * Perform a pending save now, on the calling thread. Does nothing if no save is pending.
+     * If saving fails, it is scheduled again.
+     *
+     * @return false if saving failed, true otherwise
+     */
+    boolean flush() {
+        synchronized (this) {
+            if (timerID != NONE) {
+                Main.VERTX.cancelTimer(timerID);
+                timerID = NONE;
+            }
+            if (!dirty) {
+                return true;
+            }
+            dirty = false;
+        }
+        if (save.getAsBoolean()) {
+            performed.incrementAndGet();
+            return true;
+        }
+        failed.incrementAndGet();
+        System.err.println("Parser: saving the FHEM configuration failed, trying again later");
+        if (window > 0) {
+            schedule();
+        }
+        return false;
+    }
+
+    /**
+     * Perform a pending save on a worker thread, so it can be called from an event loop.
+     */
+    void flushLater() {
+        Main.VERTX.executeBlocking(future -> {
+            flush();
+            future.complete();
+        }, false, null);
+    }
+
+    private synchronized void schedule() {
+        dirty = true;
+        if (timerID == NONE) {
+            timerID = Main.VERTX.setTimer(window, id -> flushLater());
+        }
+    }
+
+    public long getRequested() {
+        return requested.get();
+    }
+
+    public long getPerformed() {
+        return performed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+}
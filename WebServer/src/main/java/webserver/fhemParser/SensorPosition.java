@@ -0,0 +1,37 @@
+package webserver.fhemParser;
+
+/**
+ * This class holds the position of a sensor on its roomplan, as set in a layout edit.
+ * The json attributes are named like the parameters of a single position change.
+ */
+public final class SensorPosition {
+    /* Json attributes, which are needed for deserialization. */
+    private String sensorname;
+    private int coordX;
+    private int coordY;
+
+    /**
+     * Construct a position.
+     *
+     * @param sensorName the name of the sensor
+     * @param coordX     x position in %
+     * @param coordY     y position in %
+     */
+    public SensorPosition(String sensorName, int coordX, int coordY) {
+        this.sensorname = sensorName;
+        this.coordX = coordX;
+        this.coordY = coordY;
+    }
+
+    public String getSensorName() {
+        return sensorname;
+    }
+
+    public int getCoordX() {
+        return coordX;
+    }
+
+    public int getCoordY() {
+        return coordY;
+    }
+}
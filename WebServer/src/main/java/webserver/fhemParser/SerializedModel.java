@@ -0,0 +1,29 @@
+package webserver.fhemParser;
+
+/**
+ * This class holds a serialized view of a model together with the generation of that model,
+ * so that entity tags and generation headers always match the body they are sent with.
+ */
+public final class SerializedModel {
+    private final long generation;
+    private final String json;
+
+    /**
+     * Construct a serialized model.
+     *
+     * @param generation the generation of the serialized model
+     * @param json       the json representation, filtered by permissions and groups
+     */
+    SerializedModel(long generation, String json) {
+        this.generation = generation;
+        this.json = json;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getJson() {
+        return json;
+    }
+}
@@ -0,0 +1,75 @@
+package webserver.fhemParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * This class caches serialized views of one model generation.
+ * Most users share one of a few combinations of permissions and groups,
+ * so the filtered model has to be serialized only once per combination and generation.
+ * Payloads of older generations are dropped as soon as a newer generation is requested.
+ * All methods are thread safe.
+ */
+final class SerializedModelCache {
+    /**
+     * The generation which is currently cached, together with its payloads.
+     */
+    private final AtomicReference<Generation> current = new AtomicReference<>(new Generation(-1));
+
+    /**
+     * Get the serialized model for a combination of permissions and groups.
+     * If it is not cached yet, it is serialized and stored, unless a newer generation was requested in the meantime.
+     * Concurrent callers with the same combination wait for one serialization instead of repeating it.
+     *
+     * @param generation  the generation of the model which would be serialized
+     * @param permissions the permissions of the caller, in any order
+     * @param groups      the groups of the caller, in any order
+     * @param serializer  serializes the model of this generation
+     * @return the serialized model, if present
+     */
+    Optional<String> get(long generation, List<String> permissions, List<String> groups,
+                         Supplier<Optional<String>> serializer) {
+        Generation cached = current.get();
+        while (cached.number < generation) {
+            /* A newer model was published, drop all payloads of the old one */
+            current.compareAndSet(cached, new Generation(generation));
+            cached = current.get();
+        }
+        if (cached.number != generation) {
+            /* The caller still holds an older model, do not pollute the cache with it */
+            return serializer.get();
+        }
+        final String key = key(permissions) + "|" + key(groups);
+        return Optional.ofNullable(cached.payloads.computeIfAbsent(key, k -> serializer.get().orElse(null)));
+    }
+
+    /**
+     * Build an order independent key for a list of identifiers.
+     *
+     * @param identifiers the permissions or groups
+     * @return the sorted identifiers, joined by commas
+     */
+    private static String key(List<String> identifiers) {
+        final List<String> sorted = new ArrayList<>(identifiers);
+        Collections.sort(sorted);
+        return String.join(",", sorted);
+    }
+
+    /**
+     * The payloads of one model generation.
+     */
+    private static final class Generation {
+        private final long number;
+        private final Map<String, String> payloads = new ConcurrentHashMap<>();
+
+        private Generation(long number) {
+            this.number = number;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package webserver.fhemParser.fhemConnection;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs commands on a {@link FHEMConnection} asynchronously, returning futures instead of blocking.
+ * At most a configured number of command batches is in flight at once; further batches wait in order of arrival.
+ * Every batch fails with a {@link TimeoutException} if it was not answered within the configured time,
+ * counting from its submission, and then no longer counts as in flight.
+ * Connections which cannot wait without blocking, like the client mode, run on a pool of as many threads
+ * as batches may be in flight, so a slow FHEM never ties up the threads of the caller.
+ */
+public final class FHEMAsyncCon implements Closeable {
+    private final FHEMConnection connection;
+    private final int maxInFlight;
+    private final long timeout;
+    private final ExecutorService blocking;
+    private final ScheduledExecutorService timeouts;
+    /**
+     * The batches which wait for a free slot, the oldest first.
+     */
+    private final Queue<Batch> waiting = new ArrayDeque<>();
+    private int inFlight = 0;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Construct an asynchronous view on a connection.
+     *
+     * @param connection  the connection which executes the commands
+     * @param maxInFlight the maximum number of batches executed at once
+     * @param timeout     the time in milliseconds after which a batch fails
+     */
+    public FHEMAsyncCon(FHEMConnection connection, int maxInFlight, long timeout) {
+        this.connection = connection;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.timeout = timeout;
+        this.blocking = Executors.newFixedThreadPool(this.maxInFlight, runnable -> {
+            final Thread thread = new Thread(runnable, "FHEM command");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final ScheduledThreadPoolExecutor timeoutExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "FHEM command timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timeoutExecutor.setRemoveOnCancelPolicy(true);
+        this.timeouts = timeoutExecutor;
+    }
+
+    /**
+     * Executes several perl commands in FHEM in one round trip, as soon as a slot is free.
+     *
+     * @param commands the FHEM perl commands to execute, each on a single line
+     * @return the future stdout of every command, in the same order; it completes on a thread of the connection
+     */
+    public CompletableFuture<List<String>> perlCommandBatch(List<String> commands) {
+        submitted.incrementAndGet();
+        final Batch batch = new Batch(commands);
+        final ScheduledFuture<?> timeoutTask = timeouts.schedule(() -> {
+            if (batch.result.completeExceptionally(new TimeoutException("FHEM did not answer in time: " + commands))) {
+                timedOut.incrementAndGet();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        /* do not keep finished batches in the timeout queue until their timeout elapses */
+        batch.result.whenComplete((outputs, error) -> timeoutTask.cancel(false));
+        synchronized (this) {
+            waiting.add(batch);
+        }
+        dispatch();
+        return batch.result;
+    }
+
+    /**
+     * Start waiting batches while slots are free. Batches which timed out while waiting are dropped.
+     */
+    private void dispatch() {
+        while (true) {
+            final Batch batch;
+            synchronized (this) {
+                if (inFlight >= maxInFlight) {
+                    return;
+                }
+                batch = waiting.poll();
+                if (batch == null) {
+                    return;
+                }
+                if (batch.result.isDone()) {
+                    continue;
+                }
+                inFlight++;
+            }
+            batch.result.whenComplete((outputs, error) -> {
+                synchronized (this) {
+                    inFlight--;
+                }
+                dispatch();
+            });
+            final CompletableFuture<List<String>> execution;
+            try {
+                execution = connection.perlCommandBatchAsync(batch.commands, blocking);
+            } catch (RuntimeException e) {
+                batch.result.completeExceptionally(e);
+                continue;
+            }
+            execution.whenComplete((outputs, error) -> {
+                if (error != null) {
+                    batch.result.completeExceptionally(error);
+                } else {
+                    batch.result.complete(outputs);
+                }
+            });
+        }
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * Stop the threads of this instance. Batches which are in flight on the client mode are still completed.
+     */
+    @Override
+    public void close() {
+        blocking.shutdown();
+        timeouts.shutdownNow();
+    }
+
+    /**
+     * A batch of commands which waits for its outputs.
+     */
+    private static final class Batch {
+        private final List<String> commands;
+        private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+        private Batch(List<String> commands) {
+            this.commands = commands;
+        }
+    }
+}
@@ -5,6 +5,11 @@ import webserver.fhemParser.fhemUtils.FHEMUtils;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -118,6 +123,62 @@ public final class FHEMClientModeCon implements FHEMConnection {
         }
     }
 
+    /**
+     * This method starts jsonList2 in client mode and hands out its stdout while the process is still running.
+     * Closing the reader before the end of the output terminates the process.
+     *
+     * @return a reader on the output of the jsonList2 command
+     *
+     * @throws IOException           if the invocation fails
+     * @throws FHEMNotFoundException if FHEM did not print anything
+     */
+    @Override
+    public Reader openJsonList2() throws IOException, FHEMNotFoundException {
+        return openJsonList2("");
+    }
+
+    /**
+     * This method starts jsonList2 for the devices matching a devspec in client mode,
+     * and hands out its stdout while the process is still running.
+     * Closing the reader before the end of the output terminates the process.
+     *
+     * @param devspec the FHEM devspec the devices have to match; empty for all devices
+     * @return a reader on the output of the jsonList2 command
+     *
+     * @throws IOException           if the invocation fails
+     * @throws FHEMNotFoundException if FHEM did not print anything
+     */
+    @Override
+    public Reader openJsonList2(String devspec) throws IOException, FHEMNotFoundException {
+        String[] command = devspec.isEmpty()
+                ? new String[]{"perl", path, "localhost:" + port, "jsonList2"}
+                : new String[]{"perl", path, "localhost:" + port, "jsonList2 " + devspec};
+        final Process process = Runtime.getRuntime().exec(command);
+        final BufferedReader stdout = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                process.destroy();
+            }
+        };
+        /* wait for the first output, so that a missing FHEM is reported like in getJsonList2 */
+        stdout.mark(1);
+        if (stdout.read() == -1) {
+            stdout.close();
+            try (BufferedReader stderr = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+                String line;
+                StringBuilder error = new StringBuilder();
+                while ((line = stderr.readLine()) != null) {
+                    error.append(line);
+                }
+                throw new FHEMNotFoundException("FHEM not found at " + path + " on port " + port + "\n" + error);
+            }
+        }
+        stdout.reset();
+        return stdout;
+    }
+
     /**
      * Runs a bash command, assuming it is not malicious.
      *
@@ -157,4 +218,51 @@ public final class FHEMClientModeCon implements FHEMConnection {
             return line == null || line.isEmpty();
         }
     }
+
+    /**
+     * Executes several perl commands in FHEM via one client mode call.
+     * The commands are chained with ';', each followed by a perl expression printing a marker,
+     * so that the output can be split up per command.
+     *
+     * @param commands the FHEM perl commands to execute
+     * @return the stdout of every command, in the same order
+     *
+     * @throws IOException if there was an error during I/O, or the output of a command is missing
+     */
+    @Override
+    public List<String> perlCommandBatch(List<String> commands) throws IOException {
+        if (commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final String marker = "--fabulousServer-" + System.nanoTime() + "-";
+        final StringBuilder chain = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            /* a single ';' separates commands in FHEM, a double one is a literal ';' */
+            chain.append(commands.get(i).replace(";", ";;")).append(";{\"").append(marker).append(i).append("\"}");
+            if (i < commands.size() - 1) {
+                chain.append(';');
+            }
+        }
+        Process process = Runtime.getRuntime().exec(new String[]
+                {"sudo", "-u", "fhem", "perl", path, "localhost:" + port, chain.toString()});
+        final List<String> outputs = new ArrayList<>(commands.size());
+        try (BufferedReader stdin = new BufferedReader(new
+                InputStreamReader(process.getInputStream()))) {
+            StringBuilder output = new StringBuilder();
+            String line;
+            while ((line = stdin.readLine()) != null) {
+                if (line.equals(marker + outputs.size())) {
+                    outputs.add(output.toString().trim());
+                    output = new StringBuilder();
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        if (outputs.size() < commands.size()) {
+            throw new IOException("FHEM did not execute all commands, the last one was: "
+                    + commands.get(outputs.size()));
+        }
+        return outputs;
+    }
 }
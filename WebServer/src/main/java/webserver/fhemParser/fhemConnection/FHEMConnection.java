@@ -1,7 +1,13 @@
 package webserver.fhemParser.fhemConnection;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * This interface contains methods to interface with FHEM.
@@ -33,6 +39,33 @@ public interface FHEMConnection {
      */
     String getJsonList2(int port, String pathToFHEM) throws IOException, FHEMNotFoundException;
 
+    /**
+     * This method accesses jsonList2 as a stream, so that it can be parsed while it is still being received.
+     * The caller has to close the reader. The default implementation reads the whole jsonList2 first.
+     *
+     * @return a reader on the raw jsonList2
+     *
+     * @throws IOException           if there was an error during I/O
+     * @throws FHEMNotFoundException if FHEM could not be found at the default location
+     */
+    default Reader openJsonList2() throws IOException, FHEMNotFoundException {
+        return new StringReader(getJsonList2());
+    }
+
+    /**
+     * This method accesses jsonList2 of the devices matching a devspec as a stream, like 'room=sensors'.
+     * The caller has to close the reader. The default implementation ignores the devspec and returns all devices.
+     *
+     * @param devspec the FHEM devspec the devices have to match; empty for all devices
+     * @return a reader on the raw jsonList2
+     *
+     * @throws IOException           if there was an error during I/O
+     * @throws FHEMNotFoundException if FHEM could not be found at the default location
+     */
+    default Reader openJsonList2(String devspec) throws IOException, FHEMNotFoundException {
+        return openJsonList2();
+    }
+
     /**
      * This method runs a perl command in FHEM. It does not verify the command before.
      * This should be done in a layer above.
@@ -53,4 +86,34 @@ public interface FHEMConnection {
      * @throws IOException if there was an error during I/O
      */
     boolean perlCommand(String command) throws IOException;
+
+    /**
+     * Executes several perl commands in FHEM in one round trip, in the given order.
+     * Every command is executed, even if a previous one printed an error.
+     *
+     * @param commands the FHEM perl commands to execute, each on a single line
+     * @return the stdout of every command, in the same order; most often empty ('no news is good news')
+     *
+     * @throws IOException if there was an error during I/O
+     */
+    List<String> perlCommandBatch(List<String> commands) throws IOException;
+
+    /**
+     * Executes several perl commands in FHEM in one round trip, without waiting for them.
+     * The default implementation runs {@link #perlCommandBatch(List)} on the given executor;
+     * connections which can wait for outputs without blocking a thread override it.
+     *
+     * @param commands the FHEM perl commands to execute, each on a single line
+     * @param executor runs the blocking call, if there is one
+     * @return the future stdout of every command, in the same order; it fails with an IOException
+     */
+    default CompletableFuture<List<String>> perlCommandBatchAsync(List<String> commands, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return perlCommandBatch(commands);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
 }
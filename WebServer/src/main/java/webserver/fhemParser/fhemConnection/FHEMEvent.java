@@ -0,0 +1,152 @@
+package webserver.fhemParser.fhemConnection;
+
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class represents one event from FHEM's inform stream, like a changed reading or state of a device.
+ * Lines look like '2017-07-11 15:03:12 CUL_HM HM_4F5DAA_Rain rain: 0.5' with 'inform timer',
+ * or the same without the time stamp with 'inform on'.
+ * Events without a reading name, like 'CUL_HM HM_520B89 on', change the state of a device.
+ */
+public final class FHEMEvent {
+    /**
+     * The name of the reading changed by events without a reading name.
+     */
+    public static final String STATE = "state";
+    private static final Pattern TIMED_LINE =
+            Pattern.compile("^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d+)?) (\\S+) (\\S+) (.*)$");
+    private static final Pattern LINE = Pattern.compile("^(\\S+) (\\S+) (.*)$");
+    private static final Pattern READING = Pattern.compile("^([\\w.\\-]+): (.*)$");
+    /**
+     * The type of the device which FHEM uses for events about its configuration, like DEFINED or ATTR.
+     */
+    private static final String GLOBAL_TYPE = "Global";
+    /**
+     * The event of the global device when an attribute was set, like 'ATTR HM_4F5DAA coordX 42'.
+     */
+    private static final Pattern ATTRIBUTE = Pattern.compile("^ATTR (\\S+) (\\S+) ?(.*)$");
+    /**
+     * The event of the global device when the configuration was saved.
+     */
+    private static final String SAVE = "SAVE";
+
+    private final String timestamp;
+    private final String type;
+    private final String device;
+    private final String reading;
+    private final String value;
+
+    /**
+     * Construct an event.
+     *
+     * @param timestamp the time stamp sent by FHEM, or null
+     * @param type      the type of the device, like CUL_HM
+     * @param device    the name of the device
+     * @param reading   the name of the changed reading, or {@link #STATE}
+     * @param value     the new value
+     */
+    public FHEMEvent(String timestamp, String type, String device, String reading, String value) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.device = device;
+        this.reading = reading;
+        this.value = value;
+    }
+
+    /**
+     * Parse a line of the inform stream.
+     *
+     * @param line the line, without line break
+     * @return the event, or empty if the line is not an event
+     */
+    public static Optional<FHEMEvent> parse(String line) {
+        String timestamp = null;
+        String type;
+        String device;
+        String event;
+        Matcher matcher = TIMED_LINE.matcher(line);
+        if (matcher.matches()) {
+            timestamp = matcher.group(1);
+            type = matcher.group(2);
+            device = matcher.group(3);
+            event = matcher.group(4);
+        } else {
+            matcher = LINE.matcher(line);
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            type = matcher.group(1);
+            device = matcher.group(2);
+            event = matcher.group(3);
+        }
+        final Matcher reading = READING.matcher(event);
+        if (reading.matches()) {
+            return Optional.of(new FHEMEvent(timestamp, type, device, reading.group(1), reading.group(2)));
+        }
+        return Optional.of(new FHEMEvent(timestamp, type, device, STATE, event));
+    }
+
+    /**
+     * Check whether this event changes the configuration of FHEM, e.g. a device was defined or an attribute set.
+     * Such changes cannot be applied to a model reading by reading; the model has to be parsed again.
+     *
+     * @return true if this event is about the configuration of FHEM
+     */
+    public boolean isStructural() {
+        return GLOBAL_TYPE.equals(type);
+    }
+
+    /**
+     * Check whether this event only tells that the configuration of FHEM was saved, which changes nothing in a model.
+     *
+     * @return true if this event is about a save
+     */
+    public boolean isSave() {
+        return isStructural() && (value.equals(SAVE) || value.startsWith(SAVE + " "));
+    }
+
+    /**
+     * Get the attribute which is set by this event, for events like 'Global global ATTR HM_4F5DAA coordX 42'.
+     *
+     * @return the name of the device, the name of the attribute and its new value;
+     * empty if this event does not set an attribute
+     */
+    public Optional<String[]> getAttributeChange() {
+        if (!isStructural()) {
+            return Optional.empty();
+        }
+        final Matcher matcher = ATTRIBUTE.matcher(value);
+        if (!matcher.matches()) {
+            return Optional.empty();
+        }
+        return Optional.of(new String[]{matcher.group(1), matcher.group(2), matcher.group(3)});
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public String getReading() {
+        return reading;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return (timestamp == null ? "" : timestamp + " ") + type + " " + device + " "
+                + (STATE.equals(reading) ? value : reading + ": " + value);
+    }
+}
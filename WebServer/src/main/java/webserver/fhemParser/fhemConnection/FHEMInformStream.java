@@ -0,0 +1,137 @@
+package webserver.fhemParser.fhemConnection;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * This class subscribes to FHEM's inform stream on a dedicated telnet connection,
+ * and hands the events to a consumer as soon as they arrive.
+ * Events which arrive together, like the readings of one radio message, are handed over as one batch.
+ * A broken connection is opened again after a growing delay; since events may have been missed in the meantime,
+ * a reconciliation is started on a separate thread after every reconnect.
+ */
+public final class FHEMInformStream implements Closeable {
+    /**
+     * The time to wait for a connection to FHEM, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 5 * 1000;
+    /**
+     * The first delay before reconnecting, in milliseconds. It doubles after every failed attempt.
+     */
+    private static final long MIN_BACKOFF = 1000;
+    /**
+     * The maximum delay before reconnecting, in milliseconds.
+     */
+    private static final long MAX_BACKOFF = 30 * 1000;
+
+    private final String host;
+    private final int port;
+    private final Consumer<List<FHEMEvent>> consumer;
+    private final Runnable onReconnect;
+    private volatile boolean closed = false;
+    private volatile Socket socket;
+
+    /**
+     * Construct an inform stream. No connection is opened before {@link #start()}.
+     *
+     * @param host        the host on which FHEM runs
+     * @param port        the telnet port of FHEM
+     * @param consumer    receives batches of events, on the thread of this stream
+     * @param onReconnect runs on a separate thread after the connection was opened again
+     */
+    public FHEMInformStream(String host, int port, Consumer<List<FHEMEvent>> consumer, Runnable onReconnect) {
+        this.host = host;
+        this.port = port;
+        this.consumer = consumer;
+        this.onReconnect = onReconnect;
+    }
+
+    /**
+     * Start listening for events on a background thread.
+     *
+     * @return this stream, enabling builder style
+     */
+    public FHEMInformStream start() {
+        final Thread thread = new Thread(this::run, "FHEM inform stream " + host + ":" + port);
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stop listening for events.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        final Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                //don't care
+            }
+        }
+    }
+
+    private void run() {
+        long backoff = MIN_BACKOFF;
+        boolean connectedBefore = false;
+        while (!closed) {
+            try (Socket newSocket = new Socket()) {
+                newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                socket = newSocket;
+                final Writer writer = new OutputStreamWriter(newSocket.getOutputStream(), StandardCharsets.UTF_8);
+                writer.write("inform timer\n");
+                writer.flush();
+                if (connectedBefore) {
+                    CompletableFuture.runAsync(onReconnect);
+                }
+                connectedBefore = true;
+                backoff = MIN_BACKOFF;
+                read(new BufferedReader(new InputStreamReader(newSocket.getInputStream(), StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("FHEM inform stream: " + e.getMessage());
+                }
+            }
+            if (closed) {
+                return;
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(2 * backoff, MAX_BACKOFF);
+        }
+    }
+
+    private void read(BufferedReader reader) throws IOException {
+        List<FHEMEvent> batch = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            FHEMEvent.parse(line).ifPresent(batch::add);
+            /* hand over all events which arrived together */
+            if (!batch.isEmpty() && !reader.ready()) {
+                try {
+                    consumer.accept(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                batch = new ArrayList<>();
+            }
+        }
+    }
+}
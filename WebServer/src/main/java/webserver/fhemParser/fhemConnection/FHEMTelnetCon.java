@@ -0,0 +1,630 @@
+package webserver.fhemParser.fhemConnection;
+
+import webserver.fhemParser.fhemUtils.FHEMUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class talks to FHEM over a few long-lived connections to its telnet port,
+ * instead of starting a perl process in client mode for every command.
+ * <p>
+ * FHEM does not delimit the output of a command, so every command is followed by a perl expression
+ * which prints a unique marker; everything FHEM prints before the marker is the output of the command.
+ * Commands are pipelined: they are sent as soon as they are issued, and their outputs are matched to them
+ * in order by a reader thread per connection. A broken connection fails all its pending commands
+ * and is opened again by the next command.
+ * The output of jsonList2 can also be streamed: the reader thread hands it over line by line while it arrives.
+ * Like the client mode, this does not work if the telnet port is password protected.
+ */
+public final class FHEMTelnetCon implements FHEMConnection, Closeable {
+    /**
+     * The time to wait for FHEM to answer a command, in milliseconds.
+     * jsonList2 of a large installation can take a few seconds.
+     */
+    private static final long COMMAND_TIMEOUT = 30 * 1000;
+    /**
+     * The time to wait for a connection to FHEM, in milliseconds.
+     */
+    private static final int CONNECT_TIMEOUT = 5 * 1000;
+    /**
+     * The prefix of the markers which delimit the outputs of commands.
+     */
+    private static final String MARKER_PREFIX = "--fabulousServer-";
+    /**
+     * The prompt FHEM prints in interactive telnet sessions.
+     */
+    private static final String PROMPT = "fhem> ";
+    /**
+     * The number of lines of a streamed output which may be received ahead of its consumer.
+     */
+    private static final int STREAM_LINES = 1024;
+    /**
+     * The interval in which waiting producers and consumers of a streamed output check for its end, in milliseconds.
+     */
+    private static final long STREAM_POLL = 100;
+
+    /**
+     * Closes connections whose asynchronous commands were not answered in time.
+     */
+    private static final ScheduledExecutorService TIMEOUTS = newTimeouts();
+
+    private final String host;
+    private final int port;
+    private final Channel[] channels;
+    private final AtomicLong markers = new AtomicLong();
+
+    /**
+     * Create the executor for the timeouts, which drops timeouts as soon as they are cancelled.
+     *
+     * @return a scheduler with a single daemon thread
+     */
+    private static ScheduledExecutorService newTimeouts() {
+        final ScheduledThreadPoolExecutor timeouts = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "FHEM telnet timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timeouts.setRemoveOnCancelPolicy(true);
+        return timeouts;
+    }
+
+    /**
+     * Constructor which initializes this connection with a given host and port.
+     * No connection is opened before the first command.
+     *
+     * @param host        the host on which FHEM runs
+     * @param port        the telnet port of FHEM
+     * @param connections the maximum number of concurrently open connections
+     */
+    public FHEMTelnetCon(String host, int port, int connections) {
+        this.host = host;
+        this.port = port;
+        this.channels = new Channel[Math.max(1, connections)];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new Channel();
+        }
+    }
+
+    /**
+     * Constructor which initializes this connection to the local FHEM with the magic methods in FHEMUtils.
+     * (It uses the global variable FHEMPORT)
+     */
+    public FHEMTelnetCon() {
+        this("localhost", FHEMUtils.getFHEMPort(), 2);
+    }
+
+    /**
+     * Getter method for FHEM's jsonList on the defined host and port.
+     *
+     * @return A string with jsonList2's content.
+     *
+     * @throws IOException           if the connection broke during the command
+     * @throws FHEMNotFoundException if no connection could be established
+     */
+    @Override
+    public String getJsonList2() throws IOException, FHEMNotFoundException {
+        return requestJsonList2(host, port);
+    }
+
+    /**
+     * This method gets a jsonList2 from FHEM at the given port on the configured host.
+     * The path to FHEM is not needed for telnet.
+     *
+     * @param port     the port which should be used
+     * @param fhemPath ignored
+     * @return the output of the jsonList2 command
+     *
+     * @throws IOException           if the connection broke during the command
+     * @throws FHEMNotFoundException if no connection could be established
+     */
+    @Override
+    public String getJsonList2(int port, String fhemPath) throws IOException, FHEMNotFoundException {
+        if (port == this.port) {
+            return requestJsonList2(host, port);
+        }
+        try (FHEMTelnetCon other = new FHEMTelnetCon(host, port, 1)) {
+            return other.getJsonList2();
+        }
+    }
+
+    private String requestJsonList2(String host, int port) throws IOException, FHEMNotFoundException {
+        try {
+            return send("jsonList2");
+        } catch (IOException first) {
+            /* jsonList2 does not change anything, so it is safe to try again on a fresh connection */
+            try {
+                return send("jsonList2");
+            } catch (IOException e) {
+                throw new FHEMNotFoundException("FHEM not found at " + host + " on port " + port + "\n"
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Streams jsonList2 from FHEM on the least busy connection, so that it can be parsed while it arrives.
+     * If the consumer falls behind, reading from the connection pauses; closing the reader early discards the rest.
+     *
+     * @return a reader on the output of jsonList2
+     *
+     * @throws IOException           if the connection broke while opening it
+     * @throws FHEMNotFoundException if no connection could be established
+     */
+    @Override
+    public Reader openJsonList2() throws IOException, FHEMNotFoundException {
+        return openJsonList2("");
+    }
+
+    /**
+     * Streams jsonList2 of the devices matching a devspec from FHEM on the least busy connection.
+     * Several of these can be streamed in parallel, each on its own connection if there are enough.
+     *
+     * @param devspec the FHEM devspec the devices have to match; empty for all devices
+     * @return a reader on the output of jsonList2
+     *
+     * @throws IOException           if the connection broke while opening it
+     * @throws FHEMNotFoundException if no connection could be established
+     */
+    @Override
+    public Reader openJsonList2(String devspec) throws IOException, FHEMNotFoundException {
+        final String command = devspec.isEmpty() ? "jsonList2" : "jsonList2 " + devspec;
+        try {
+            return leastBusy().stream(command);
+        } catch (IOException first) {
+            /* nothing was received yet, so it is safe to try again on a fresh connection */
+            try {
+                return leastBusy().stream(command);
+            } catch (IOException e) {
+                throw new FHEMNotFoundException("FHEM not found at " + host + " on port " + port + "\n"
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs a FHEM command and returns everything it printed.
+     *
+     * @param command the command to execute
+     * @return the output of the command, lines separated by '\n'
+     *
+     * @throws IOException if the connection broke or FHEM did not answer in time
+     */
+    @Override
+    public Optional<String> execCommand(String command) throws IOException {
+        return Optional.of(send(command));
+    }
+
+    /**
+     * Executes a perl command in FHEM via telnet.
+     *
+     * @param command the FHEM perl command to execute
+     * @return true if the command did not print anything ('no news is good news')
+     *
+     * @throws IOException if there was an error during I/O
+     */
+    @Override
+    public boolean perlCommand(String command) throws IOException {
+        return send(command).isEmpty();
+    }
+
+    /**
+     * Executes several perl commands in FHEM via telnet. All commands are written at once on the same connection,
+     * so they cost one round trip and are executed in order.
+     *
+     * @param commands the FHEM perl commands to execute
+     * @return the output of every command, in the same order
+     *
+     * @throws IOException if there was an error during I/O
+     */
+    @Override
+    public List<String> perlCommandBatch(List<String> commands) throws IOException {
+        return send(commands);
+    }
+
+    /**
+     * Executes several perl commands in FHEM via telnet without blocking: the outputs are matched to the commands
+     * by the reader thread of the connection, which completes the future.
+     * If FHEM does not answer in time, the connection is closed and the future fails.
+     *
+     * @param commands the FHEM perl commands to execute
+     * @param executor ignored, since no thread blocks while waiting for FHEM
+     * @return the future output of every command, in the same order
+     */
+    @Override
+    public CompletableFuture<List<String>> perlCommandBatchAsync(List<String> commands, Executor executor) {
+        for (String command : commands) {
+            if (command.contains("\n") || command.contains("\r")) {
+                throw new IllegalArgumentException("FHEM commands have to be on a single line: " + command);
+            }
+        }
+        final Channel channel = leastBusy();
+        final List<CompletableFuture<String>> futures;
+        try {
+            futures = channel.send(commands);
+        } catch (IOException e) {
+            final CompletableFuture<List<String>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        final CompletableFuture<Void> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        final ScheduledFuture<?> timeoutTask = TIMEOUTS.schedule(() -> {
+            if (!all.isDone()) {
+                /* the outputs on this connection cannot be matched to their commands anymore */
+                channel.close(new IOException("FHEM did not answer in time"));
+            }
+        }, COMMAND_TIMEOUT, TimeUnit.MILLISECONDS);
+        /* do not keep answered batches in the timeout queue until their timeout elapses */
+        all.whenComplete((done, error) -> timeoutTask.cancel(false));
+        return all.thenApply(done -> {
+            final List<String> outputs = new ArrayList<>(futures.size());
+            for (CompletableFuture<String> output : futures) {
+                outputs.add(output.join());
+            }
+            return outputs;
+        });
+    }
+
+    /**
+     * Close all connections to FHEM. Pending commands fail.
+     */
+    @Override
+    public void close() {
+        for (Channel channel : channels) {
+            channel.close(new IOException("The connection to FHEM was closed"));
+        }
+    }
+
+    /**
+     * Send a command on the least busy connection and wait for its output.
+     *
+     * @param command a single line FHEM command
+     * @return the output of the command
+     *
+     * @throws IOException if the connection broke or FHEM did not answer in time
+     */
+    private String send(String command) throws IOException {
+        return send(Collections.singletonList(command)).get(0);
+    }
+
+    /**
+     * Send commands on the least busy connection and wait for all their outputs.
+     *
+     * @param commands single line FHEM commands
+     * @return the outputs of the commands, in the same order
+     *
+     * @throws IOException if the connection broke or FHEM did not answer in time
+     */
+    private List<String> send(List<String> commands) throws IOException {
+        for (String command : commands) {
+            if (command.contains("\n") || command.contains("\r")) {
+                throw new IllegalArgumentException("FHEM commands have to be on a single line: " + command);
+            }
+        }
+        if (commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Channel channel = leastBusy();
+        final List<CompletableFuture<String>> futures = channel.send(commands);
+        final long deadline = System.currentTimeMillis() + COMMAND_TIMEOUT;
+        final List<String> outputs = new ArrayList<>(commands.size());
+        try {
+            for (CompletableFuture<String> output : futures) {
+                outputs.add(output.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+            }
+            return outputs;
+        } catch (TimeoutException e) {
+            /* the outputs on this connection cannot be matched to their commands anymore */
+            channel.close(new IOException("FHEM did not answer in time"));
+            throw new IOException("FHEM did not answer '" + commands.get(outputs.size()) + "' in time");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for FHEM", e);
+        }
+    }
+
+    private Channel leastBusy() {
+        Channel channel = channels[0];
+        for (Channel candidate : channels) {
+            if (candidate.pendingCount() < channel.pendingCount()) {
+                channel = candidate;
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * A connection to FHEM, which is opened on demand.
+     */
+    private final class Channel {
+        /**
+         * The commands which were sent but not yet answered, the oldest first.
+         */
+        private final Queue<Pending> pending = new ArrayDeque<>();
+        private Socket socket;
+        private Writer writer;
+
+        private synchronized int pendingCount() {
+            return pending.size();
+        }
+
+        /**
+         * Send commands, each followed by its marker, in one write,
+         * opening the connection first if necessary.
+         *
+         * @param commands the commands
+         * @return the future outputs of the commands
+         *
+         * @throws IOException if the connection could not be opened or written to
+         */
+        private synchronized List<CompletableFuture<String>> send(List<String> commands) throws IOException {
+            final List<Pending> requests = new ArrayList<>(commands.size());
+            final List<CompletableFuture<String>> outputs = new ArrayList<>(commands.size());
+            for (String command : commands) {
+                final Pending request = new Pending(MARKER_PREFIX + markers.incrementAndGet(), null);
+                requests.add(request);
+                outputs.add(request.output);
+            }
+            write(commands, requests);
+            return outputs;
+        }
+
+        /**
+         * Send a command, followed by its marker, whose output is streamed to the returned reader.
+         *
+         * @param command the command
+         * @return the reader on the output of the command
+         *
+         * @throws IOException if the connection could not be opened or written to
+         */
+        private synchronized Reader stream(String command) throws IOException {
+            final StreamedOutput output = new StreamedOutput(this, command);
+            write(Collections.singletonList(command),
+                    Collections.singletonList(new Pending(MARKER_PREFIX + markers.incrementAndGet(), output)));
+            return output;
+        }
+
+        private void write(List<String> commands, List<Pending> requests) throws IOException {
+            if (socket == null) {
+                open();
+            }
+            final StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < commands.size(); i++) {
+                pending.add(requests.get(i));
+                lines.append(commands.get(i)).append("\n{\"").append(requests.get(i).marker).append("\"}\n");
+            }
+            try {
+                writer.write(lines.toString());
+                writer.flush();
+            } catch (IOException e) {
+                close(e);
+                throw e;
+            }
+        }
+
+        private void open() throws IOException {
+            final Socket newSocket = new Socket();
+            try {
+                newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+                newSocket.setTcpNoDelay(true);
+                writer = new OutputStreamWriter(newSocket.getOutputStream(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                newSocket.close();
+                throw e;
+            }
+            socket = newSocket;
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(newSocket.getInputStream(), StandardCharsets.UTF_8));
+            final Thread thread = new Thread(() -> read(newSocket, reader), "FHEM telnet reader " + host + ":" + port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Collect the output of the oldest pending command until its marker arrives, for as long as the socket is open.
+         *
+         * @param readSocket the socket this thread reads from
+         * @param reader     the reader on the input of the socket
+         */
+        private void read(Socket readSocket, BufferedReader reader) {
+            final StringBuilder output = new StringBuilder();
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    while (line.startsWith(PROMPT)) {
+                        line = line.substring(PROMPT.length());
+                    }
+                    final Pending oldest;
+                    synchronized (this) {
+                        oldest = pending.peek();
+                    }
+                    if (oldest != null && line.equals(oldest.marker)) {
+                        synchronized (this) {
+                            pending.poll();
+                        }
+                        if (oldest.stream != null) {
+                            oldest.stream.complete();
+                            oldest.output.complete("");
+                            continue;
+                        }
+                        /* drop the line break FHEM prints after every output */
+                        while (output.length() > 0 && output.charAt(output.length() - 1) == '\n') {
+                            output.setLength(output.length() - 1);
+                        }
+                        oldest.output.complete(output.toString());
+                        output.setLength(0);
+                    } else if (oldest != null && oldest.stream != null) {
+                        oldest.stream.offer(line + '\n');
+                    } else {
+                        output.append(line).append('\n');
+                    }
+                }
+                closeIfCurrent(readSocket, new IOException("FHEM closed the connection"));
+            } catch (IOException e) {
+                closeIfCurrent(readSocket, e);
+            }
+        }
+
+        private synchronized void closeIfCurrent(Socket readSocket, IOException cause) {
+            if (socket == readSocket) {
+                close(cause);
+            }
+        }
+
+        /**
+         * Close the connection and fail all pending commands.
+         *
+         * @param cause the reason for the pending commands to fail
+         */
+        private synchronized void close(IOException cause) {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    //don't care
+                }
+                socket = null;
+                writer = null;
+            }
+            Pending request;
+            while ((request = pending.poll()) != null) {
+                request.output.completeExceptionally(cause);
+                if (request.stream != null) {
+                    request.stream.fail(cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * A command which waits for its output.
+     */
+    private static final class Pending {
+        private final String marker;
+        private final CompletableFuture<String> output = new CompletableFuture<>();
+        /**
+         * Receives the output line by line, or null if the output is collected.
+         */
+        private final StreamedOutput stream;
+
+        private Pending(String marker, StreamedOutput stream) {
+            this.marker = marker;
+            this.stream = stream;
+        }
+    }
+
+    /**
+     * The output of a command, handed over from the reader thread of a connection to a consumer while it arrives.
+     * The reader thread waits while the consumer is too far behind, and discards the output once it was closed.
+     */
+    private static final class StreamedOutput extends Reader {
+        private final BlockingQueue<String> lines = new ArrayBlockingQueue<>(STREAM_LINES);
+        private final Channel channel;
+        private final String command;
+        private final long deadline = System.currentTimeMillis() + COMMAND_TIMEOUT;
+        /**
+         * Set by the reader thread after the last line was queued.
+         */
+        private volatile boolean complete = false;
+        private volatile IOException failure;
+        private volatile boolean closed = false;
+        private String current = "";
+        private int position = 0;
+
+        private StreamedOutput(Channel channel, String command) {
+            this.channel = channel;
+            this.command = command;
+        }
+
+        private void offer(String line) {
+            try {
+                while (!closed && !lines.offer(line, STREAM_POLL, TimeUnit.MILLISECONDS)) {
+                    //wait for the consumer
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void complete() {
+            complete = true;
+        }
+
+        private void fail(IOException cause) {
+            failure = cause;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (position >= current.length()) {
+                /* read the flag before polling, so that no line queued before the end is missed */
+                final boolean wasComplete = complete;
+                final String line = lines.poll();
+                if (line != null) {
+                    current = line;
+                    position = 0;
+                } else if (wasComplete) {
+                    return -1;
+                } else if (failure != null) {
+                    throw failure;
+                } else if (System.currentTimeMillis() > deadline) {
+                    /* the outputs on this connection cannot be matched to their commands anymore */
+                    channel.close(new IOException("FHEM did not answer in time"));
+                    throw new IOException("FHEM did not answer '" + command + "' in time");
+                } else {
+                    try {
+                        final String next = lines.poll(STREAM_POLL, TimeUnit.MILLISECONDS);
+                        if (next != null) {
+                            current = next;
+                            position = 0;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for FHEM", e);
+                    }
+                }
+            }
+            final int count = Math.min(length, current.length() - position);
+            current.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            lines.clear();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 /**
- * This package encapsulates an interface to FHEM that enables sending commands and receiving the jsonlist2.
+ * This package encapsulates an interface to FHEM that enables sending commands and receiving the jsonlist2,
+ * either over persistent telnet connections or by starting FHEM in client mode.
  *
  * @author Rafael on 11.07.17.
  */
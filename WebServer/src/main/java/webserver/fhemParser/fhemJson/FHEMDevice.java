@@ -6,6 +6,7 @@ import webserver.fhemParser.fhemModel.room.FHEMRoom;
 import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,10 @@ public final class FHEMDevice {
      * It should only ever be valid for FileLog devices.
      */
     private transient String linkedDeviceName;
+    /**
+     * A hash of the json this device was parsed from, or null if it was not computed.
+     */
+    private transient String fingerprint;
     /* Json Attributes */
     /**
      * Name as defined in FHEM.
@@ -63,13 +68,22 @@ public final class FHEMDevice {
         int coordX = attributes.getCoordX();
         int coordY = attributes.getCoordY();
         List<String> permissions = attributes.getPermissionList();
-        HashMap<String, String> meta = new HashMap<>();
 
         String alias = attributes.getAlias();
         String de_alias = attributes.getDeAlias();
         String en_alias = attributes.getEnAlias();
         String ar_alias = attributes.getArAlias();
 
+        /* Add metadata which might or might not be supplied for every sensor */
+        //Optional<String> sub_opt = attributes.getSubType();
+        //sub_opt.ifPresent(s ->
+        //        sensor.addMeta("Subtype", s));
+        //sensor.addMeta("Type", internals.getType().orElse("Not supplied"));
+        //sensor.addMeta("SubType", internals.getType().orElse("Not supplied"));
+        String state = internals.getState().orElse(null);
+        Map<String, String> readingMeta = readings.getReadings();
+        HashMap<String, String> meta = toMeta(name, alias, state, readingMeta);
+
         FHEMSensor sensor = new FHEMSensor(
                 coordX,
                 coordY,
@@ -84,36 +98,7 @@ public final class FHEMDevice {
                 attributes.getFuseTag());
 
         sensor.setIcon(attributes.getIcon());
-
-        /* Add metadata which might or might not be supplied for every sensor */
-        if (alias.contains("Licht")) {
-            String reading = internals.getState().orElse("No brightness reading supplied");
-            reading = reading.substring(3) + " Lux";
-            sensor.addMeta("Brightness", reading);
-        }
-        //Optional<String> sub_opt = attributes.getSubType();
-        //sub_opt.ifPresent(s ->
-        //        sensor.addMeta("Subtype", s));
-        Optional<String> reading_opt = internals.getState();
-        reading_opt.ifPresent(reading -> {
-            Map<String, String> map = readings.getReadings();
-            if (!map.values().contains(reading)) {
-                if (reading.startsWith("Usage: ")) {
-                    sensor.addMeta("Usage", reading.substring(7));
-                } else if (reading.startsWith("Temperature: ")) {
-                    sensor.addMeta("Temperature", reading.substring(13) + "°C");
-                } else if (reading.startsWith("Disk_Usage: ")) {
-                    sensor.addMeta("DiskUsage", reading.substring(12));
-                } else if (sensor.getName().endsWith("Pwr")) {
-                    sensor.addMeta("PowerMeter", reading);
-                } else if (!reading.equals("???") && !reading.matches("([^:]+:){2,}.*")) {
-                    sensor.addMeta("Reading", reading);
-                }
-            }
-        });
-        //sensor.addMeta("Type", internals.getType().orElse("Not supplied"));
-        //sensor.addMeta("SubType", internals.getType().orElse("Not supplied"));
-        readings.getReadings().forEach(sensor::addMeta);
+        sensor.setDeviceState(state, readingMeta);
 
         List<String> importantFields = attributes.getImportantFields();
         for (String field : importantFields) {
@@ -128,6 +113,126 @@ public final class FHEMDevice {
         return Optional.of(sensor);
     }
 
+    /**
+     * Compute the meta information of a sensor from the state and the readings of its device.
+     * The state is shown as brightness for lights, and as usage, temperature, disk usage, power or plain reading,
+     * unless it only repeats one of the readings. Readings are shown over the state.
+     *
+     * @param name        the name of the device
+     * @param alias       the alias of the device
+     * @param state       the state of the device, or null if it has none
+     * @param readingMeta the readings of the device which are shown, as meta information
+     * @return the meta information
+     */
+    private static HashMap<String, String> toMeta(String name, String alias, String state,
+                                                  Map<String, String> readingMeta) {
+        final HashMap<String, String> meta = new HashMap<>();
+        if (alias.contains("Licht")) {
+            String reading = state != null ? state : "No brightness reading supplied";
+            if (reading.length() >= 3) {
+                meta.put("Brightness", reading.substring(3) + " Lux");
+            }
+        }
+        if (state != null) {
+            addStateMeta(meta, name, state, readingMeta.values());
+        }
+        meta.putAll(readingMeta);
+        return meta;
+    }
+
+    /**
+     * Add meta information about the state of a device.
+     *
+     * @param meta          the meta information of the sensor of the device
+     * @param name          the name of the device
+     * @param state         the state of the device
+     * @param readingValues the values of the readings which are already shown
+     */
+    private static void addStateMeta(Map<String, String> meta, String name, String state,
+                                     Collection<String> readingValues) {
+        if (!readingValues.contains(state)) {
+            if (state.startsWith("Usage: ")) {
+                meta.put("Usage", state.substring(7));
+            } else if (state.startsWith("Temperature: ")) {
+                meta.put("Temperature", state.substring(13) + "°C");
+            } else if (state.startsWith("Disk_Usage: ")) {
+                meta.put("DiskUsage", state.substring(12));
+            } else if (name.endsWith("Pwr")) {
+                meta.put("PowerMeter", state);
+            } else if (!state.equals("???") && !state.matches("([^:]+:){2,}.*")) {
+                meta.put("Reading", state);
+            }
+        }
+    }
+
+    /**
+     * Apply a changed reading, as announced by FHEM's inform stream, to the sensor of a device.
+     * The meta information is computed again from the state and readings, the same way as when the sensor
+     * is parsed from jsonList2, so that no meta information of an earlier state is left over.
+     * Fused sensors are made of several devices and are not changed; the next poll updates them.
+     *
+     * @param sensor  the sensor of the device
+     * @param reading the name of the reading in FHEM, 'state' for a changed state
+     * @param value   the new value of the reading
+     * @return true if the meta information of the sensor changed
+     */
+    public static boolean applyReading(FHEMSensor sensor, String reading, String value) {
+        final Optional<Map<String, String>> readingMeta_opt = sensor.getReadingMeta();
+        if (!readingMeta_opt.isPresent()) {
+            return false;
+        }
+        String state = sensor.getDeviceState().orElse(null);
+        final Map<String, String> readingMeta = new HashMap<>(readingMeta_opt.get());
+        if ("state".equals(reading)) {
+            state = value;
+        } else {
+            final Optional<Map.Entry<String, String>> entry_opt = FHEMDeviceReadings.toMeta(reading, value);
+            if (!entry_opt.isPresent()) {
+                return false;
+            }
+            readingMeta.put(entry_opt.get().getKey(), entry_opt.get().getValue());
+        }
+        sensor.setDeviceState(state, readingMeta);
+        return sensor.setMeta(toMeta(sensor.getName(), sensor.getAlias(), state, readingMeta));
+    }
+
+    /**
+     * Check whether a changed attribute can be applied to a sensor by {@link #applyAttribute},
+     * instead of parsing the sensor again.
+     *
+     * @param attribute the name of the attribute in FHEM
+     * @return true if the attribute is a coordinate
+     */
+    public static boolean isApplicableAttribute(String attribute) {
+        return "coordX".equals(attribute) || "coordY".equals(attribute);
+    }
+
+    /**
+     * Apply a changed attribute, as announced by FHEM's inform stream, to the sensor of a device.
+     * Only the attributes accepted by {@link #isApplicableAttribute(String)} are applied.
+     *
+     * @param sensor    the sensor of the device
+     * @param attribute the name of the attribute in FHEM
+     * @param value     the new value of the attribute
+     * @return true if the sensor changed
+     */
+    public static boolean applyAttribute(FHEMSensor sensor, String attribute, String value) {
+        if (!isApplicableAttribute(attribute)) {
+            return false;
+        }
+        final int coordinate;
+        try {
+            coordinate = value.isEmpty() ? 0 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring " + attribute + " of " + sensor.getName() + ", not a number: " + value);
+            return false;
+        }
+        if ("coordX".equals(attribute)) {
+            return sensor.setCoords(coordinate, sensor.getCoordY());
+        }
+        return sensor.setCoords(sensor.getCoordX(), coordinate);
+    }
+
     /**
      * This method parses this device to a filelog, if it's type fits
      * It also links a timeserie to the new log by it's path.
@@ -307,6 +412,19 @@ public final class FHEMDevice {
         return linkedDeviceName.equals(sensor.getName());
     }
 
+    /**
+     * Get a hash of the json this device was parsed from. Devices with equal fingerprints were equal in FHEM.
+     *
+     * @return the fingerprint, or null if it was not computed
+     */
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
     /**
      * Getter for this device's readings.
      *
@@ -2,8 +2,10 @@ package webserver.fhemParser.fhemJson;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.AbstractMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * This class represents readings in jsonList2. It provides a method to get the fields which are actually set.
@@ -23,6 +25,22 @@ final class FHEMDeviceReadings {
     private ValueTimePair current;
     private ValueTimePair noise;
 
+    /**
+     * The readings which are shown as meta information: their name in FHEM, their key in the meta map and their unit.
+     */
+    private static final String[][] META_READINGS = {
+            {"battery", "Battery", ""},
+            /* Should not be separated, because the ruleparser would break */
+            {"battery_percent", "BatteryPercent", " %"},
+            {"humidity", "Humidity", " %"},
+            {"temperature", "Temperature", " °C"},
+            {"co2", "CO2", " ppm"},
+            {"power", "Power", " W"},
+            {"voltage", "Voltage", " V"},
+            {"current", "Current", " mA"},
+            {"noise", "Noise", " dB"},
+    };
+
     /**
      * This method returns the readings' useful fields if set.
      * The implementation is very manual, but using Gson this is a simple way of doing it
@@ -32,34 +50,37 @@ final class FHEMDeviceReadings {
      */
     Map<String, String> getReadings() {
         Map<String, String> ret = new HashMap<>();
-        if (battery != null) {
-            ret.put("Battery", battery.value);
-        }
-        if (batteryPercent != null) {
-            /* Should not be separated, because the ruleparser would break */
-            ret.put("BatteryPercent", batteryPercent.value + " %");
-        }
-        if (humidity != null) {
-            ret.put("Humidity", humidity.value + " %");
-        }
-        if (temperature != null) {
-            ret.put("Temperature", temperature.value + " °C");
-        }
-        if (co2 != null) {
-            ret.put("CO2", co2.value + " ppm");
-        }
-        if (power != null) {
-            ret.put("Power", power.value + " W");
-        }
-        if (voltage != null) {
-            ret.put("Voltage", voltage.value + " V");
-        }
-        if (current != null) {
-            ret.put("Current", current.value + " mA");
+        put(ret, "battery", battery);
+        put(ret, "battery_percent", batteryPercent);
+        put(ret, "humidity", humidity);
+        put(ret, "temperature", temperature);
+        put(ret, "co2", co2);
+        put(ret, "power", power);
+        put(ret, "voltage", voltage);
+        put(ret, "current", current);
+        put(ret, "noise", noise);
+        return ret;
+    }
+
+    private static void put(Map<String, String> meta, String reading, ValueTimePair pair) {
+        if (pair != null) {
+            toMeta(reading, pair.value).ifPresent(entry -> meta.put(entry.getKey(), entry.getValue()));
         }
-        if (noise != null) {
-            ret.put("Noise", noise.value + " dB");
+    }
+
+    /**
+     * Translate a reading to an entry of the meta information of a sensor, if it is shown at all.
+     *
+     * @param reading the name of the reading in FHEM
+     * @param value   the value of the reading
+     * @return the key and value with unit in the meta map, or empty if the reading is not shown
+     */
+    static Optional<Map.Entry<String, String>> toMeta(String reading, String value) {
+        for (String[] metaReading : META_READINGS) {
+            if (metaReading[0].equals(reading)) {
+                return Optional.of(new AbstractMap.SimpleImmutableEntry<>(metaReading[1], value + metaReading[2]));
+            }
         }
-        return ret;
+        return Optional.empty();
     }
 }
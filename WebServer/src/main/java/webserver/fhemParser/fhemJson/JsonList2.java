@@ -1,16 +1,39 @@
 package webserver.fhemParser.fhemJson;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import org.jetbrains.annotations.NotNull;
 import webserver.fhemParser.fhemModel.FHEMModel;
 import webserver.fhemParser.fhemModel.log.FHEMFileLog;
 import webserver.fhemParser.fhemModel.room.FHEMRoom;
 import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 /*
@@ -60,7 +83,7 @@ public class JsonList2 {
      * List of all defined FHEM devices matching devicespec (if given; else all of them).
      **/
     @SerializedName("Results")
-    private final FHEMDevice[] results = null;
+    private FHEMDevice[] results = null;
     /**
      * Arguments which were passed to jsonList2 FHEM command
      * (grammar: &lt;devicespec&gt; &lt;value1&gt; &lt;value2&gt; ...).
@@ -71,6 +94,14 @@ public class JsonList2 {
      * Number of devices in FHEM matching the &lt;devicespec&gt; (or all of them if empty).
      **/
     private int totalResultsReturned;
+    /**
+     * A hash of the text this instance was parsed from, or null if it was not computed.
+     */
+    private transient String fingerprint;
+    /**
+     * The fingerprint of every sensor of the model most recently built from this jsonList2, by name.
+     */
+    private transient Map<String, String> sensorFingerprints = Collections.emptyMap();
 
     /**
      * Parse a jsonList2 object from json using Gson. Fields not present in the json file are left untouched.
@@ -82,73 +113,336 @@ public class JsonList2 {
         return new Gson().fromJson(jsonString, JsonList2.class);
     }
 
+    /**
+     * Parse a jsonList2 object incrementally from a stream, while it is still being received.
+     * Every device is bound as soon as it was read completely, and dropped unless it is a sensor or a filelog,
+     * so that memory does not grow with the size of the whole installation.
+     * A fingerprint of the text is computed on the way, see {@link #getFingerprint()},
+     * and one of every device which is kept.
+     * The reader is not closed.
+     *
+     * @param reader  the input, positioned at the start of jsonList2
+     * @param rewrite applied to every string value in the devices, e.g. to point log paths somewhere else
+     * @return an instance of jsonList2 containing the relevant devices
+     *
+     * @throws IOException if reading fails, or the input is not a complete jsonList2
+     */
+    public static @NotNull JsonList2 parseFrom(Reader reader, UnaryOperator<String> rewrite) throws IOException {
+        final Gson gson = new GsonBuilder().registerTypeAdapter(String.class, new RewritingStringAdapter(rewrite))
+                .create();
+        final FingerprintingReader fingerprinting = new FingerprintingReader(reader);
+        final JsonReader json = new JsonReader(fingerprinting);
+        json.setLenient(true);
+        final JsonParser parser = new JsonParser();
+        final MessageDigest digest = newDigest();
+        final JsonList2 list = new JsonList2();
+        final List<FHEMDevice> devices = new ArrayList<>();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "Arg":
+                    list.arg = json.nextString();
+                    break;
+                case "totalResultsReturned":
+                    list.totalResultsReturned = json.nextInt();
+                    break;
+                case "Results":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        final JsonElement element = parser.parse(json);
+                        final FHEMDevice device = gson.fromJson(element, FHEMDevice.class);
+                        if (device != null && (device.isSensor() || device.isFileLog())) {
+                            device.setFingerprint(toHex(
+                                    digest.digest(element.toString().getBytes(StandardCharsets.UTF_8))));
+                            devices.add(device);
+                        }
+                    }
+                    json.endArray();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        list.results = devices.toArray(new FHEMDevice[devices.size()]);
+        list.fingerprint = fingerprinting.getFingerprint();
+        return list;
+    }
+
+    /**
+     * Merge the devices of several jsonList2, e.g. of different devspecs.
+     * A device which matched several devspecs is contained only once.
+     *
+     * @param lists the lists to merge
+     * @return a jsonList2 containing every device of the lists once, in the order of the lists
+     */
+    public static @NotNull JsonList2 merge(List<JsonList2> lists) {
+        final Map<String, FHEMDevice> devices = new LinkedHashMap<>();
+        final List<String> args = new ArrayList<>();
+        final List<String> fingerprints = new ArrayList<>();
+        for (JsonList2 list : lists) {
+            args.add(list.arg);
+            fingerprints.add(list.fingerprint);
+            //noinspection ConstantConditions
+            for (FHEMDevice device : list.results) {
+                devices.putIfAbsent(device.getName(), device);
+            }
+        }
+        final JsonList2 merged = new JsonList2();
+        merged.arg = String.join(" ", args);
+        merged.results = devices.values().toArray(new FHEMDevice[devices.size()]);
+        merged.totalResultsReturned = merged.results.length;
+        merged.fingerprint = fingerprints.contains(null) ? null : String.join(",", fingerprints);
+        return merged;
+    }
+
+    /**
+     * Get a hash of the text this jsonList2 was parsed from. If it is equal to the fingerprint
+     * of an earlier jsonList2, FHEM's output did not change in between.
+     *
+     * @return the fingerprint, or empty if this jsonList2 was not parsed from a stream
+     */
+    public Optional<String> getFingerprint() {
+        return Optional.ofNullable(fingerprint);
+    }
+
+    /**
+     * Get a fingerprint of every sensor of the model which was most recently built by
+     * {@link #toFHEMModel(FHEMModel, Map)}, made of the fingerprints of its device and of the devices of its filelogs.
+     * Sensors of devices which were not parsed from a stream have no fingerprint.
+     *
+     * @return the fingerprints by sensor name, empty if no model was built yet
+     */
+    public Map<String, String> getSensorFingerprints() {
+        return sensorFingerprints;
+    }
+
     /**
      * This method converts a parsed jsonList2 to a FHEMModel.
      *
      * @return a FHEMModel generated from the contents of jsonList2.
      */
     public FHEMModel toFHEMModel() {
-        HashSet<FHEMSensor> sensors = new HashSet<>();
-        HashSet<FHEMRoom> rooms = new HashSet<>();
-        HashSet<FHEMDevice> filelogs = new HashSet<>();
+        return toFHEMModel(null, Collections.emptyMap());
+    }
 
+    /**
+     * This method converts a parsed jsonList2 to a FHEMModel, patching a previous model.
+     * Devices are parsed in parallel, which mostly helps with the logs, since the first line of every logfile
+     * has to be read from disk. Sensors, rooms and logs are then put together by name, in time linear
+     * in the number of devices.
+     * A sensor whose fingerprint is the same as in the previous jsonList2 is not parsed again: the sensor of the
+     * previous model is copied without its rule information, sharing its logs. Fused sensors are always parsed,
+     * since they are made of several devices.
+     *
+     * @param previous             the model which was built from the previous jsonList2, or null
+     * @param previousFingerprints the fingerprints of the sensors of the previous jsonList2,
+     *                             see {@link #getSensorFingerprints()}
+     * @return a FHEMModel generated from the contents of jsonList2.
+     */
+    public FHEMModel toFHEMModel(FHEMModel previous, Map<String, String> previousFingerprints) {
         /* Ignore static analysis 'null dereference' warnings here: results is populated by Gson */
         //noinspection ConstantConditions
-        for (FHEMDevice d : results) {
-            boolean isSensor = d.isSensor();
-            boolean isFileLog = d.isFileLog();
-            /* Add raw devices, parse them into sensors and filelogs later */
-            if (isSensor) {
-                Optional<FHEMSensor> parsedSensor_opt = d.parseToSensor();
-                if (!parsedSensor_opt.isPresent()) {
-                    System.err.println("Could not parse sensor! " + d.getName());
-                    continue;
-                }
-                FHEMSensor sensor = parsedSensor_opt.get();
-                FHEMRoom appRoom = d.getAppRoom();
-                if (rooms.contains(appRoom)) {
-                    for (FHEMRoom room : rooms) {
-                        if (room.equals(appRoom)) {
-                            room.addSensor(sensor);
-                        }
-                    }
-                } else {
-                    appRoom.addSensor(sensor);
-                    rooms.add(appRoom);
-                }
-                sensors.add(sensor);
-            } else if (isFileLog) {
-                if (d.isFakelog()) {
-                    continue;
-                }
-                if (!d.isApproved()) {
-                    continue;
-                }
-                filelogs.add(d);
+        final List<FHEMDevice> devices = Arrays.asList(results);
+
+        /* Find the filelogs of every sensor by name first, since they are part of its fingerprint */
+        final Map<String, List<FHEMDevice>> fileLogsBySensor = new HashMap<>();
+        for (FHEMDevice d : devices) {
+            if (d.isSensor() || !d.isFileLog() || d.isFakelog() || !d.isApproved()) {
+                continue;
+            }
+            Optional<String> sensorname_opt = d.getInternals().getRegexpPrefix();
+            if (!sensorname_opt.isPresent()) {
+                System.err.println("Could not detect which sensor corresponds to this filelog: " + d.getName());
+                continue;
             }
+            fileLogsBySensor.computeIfAbsent(sensorname_opt.get(), name -> new ArrayList<>()).add(d);
         }
 
-        for (FHEMDevice filelog : filelogs) {
-            Optional<String> sensorname_opt = filelog.getInternals().getRegexpPrefix();
-            if (!sensorname_opt.isPresent()) {
-                System.err.println("Could not detect which sensor corresponds to this filelog: " + filelog.getName());
+        /* Copy the sensors which did not change from the previous model */
+        final Map<String, String> fingerprints = new HashMap<>();
+        final Map<FHEMDevice, FHEMSensor> copies = new IdentityHashMap<>();
+        for (FHEMDevice d : devices) {
+            if (!d.isSensor()) {
+                continue;
+            }
+            final String fingerprint =
+                    fingerprintOf(d, fileLogsBySensor.getOrDefault(d.getName(), Collections.emptyList()));
+            if (fingerprint == null || fingerprints.putIfAbsent(d.getName(), fingerprint) != null) {
                 continue;
             }
-            String sensorname = sensorname_opt.get();
-            List<FHEMSensor> associated = sensors.stream()
-                    .filter(s -> s.getName().equals(sensorname)).collect(Collectors.toList());
-            if (associated.size() != 1) {
-                System.err.println("Found " + associated.size() + " sensors for FileLog " + filelog.getName());
-            } else {
-                FHEMSensor sensor = associated.get(0);
-                Optional<FHEMFileLog> log = filelog.parseToLog();
-                log.ifPresent(sensor::addLog);
+            if (previous != null && fingerprint.equals(previousFingerprints.get(d.getName()))) {
+                previous.getSensorByName(d.getName())
+                        .filter(sensor -> sensor.getFuseTag().isEmpty())
+                        .ifPresent(sensor -> copies.put(d, sensor.copyWithoutRuleInfos()));
             }
         }
+        sensorFingerprints = Collections.unmodifiableMap(fingerprints);
 
-        for (FHEMRoom room : rooms) {
+        /* Parse the other sensors in parallel, then add all of them to their rooms in order */
+        final List<Map.Entry<FHEMDevice, Optional<FHEMSensor>>> parsedSensors = devices.parallelStream()
+                .filter(FHEMDevice::isSensor)
+                .map(d -> new AbstractMap.SimpleImmutableEntry<>(d,
+                        copies.containsKey(d) ? Optional.of(copies.get(d)) : d.parseToSensor()))
+                .collect(Collectors.toList());
+        final Map<String, FHEMSensor> sensors = new HashMap<>();
+        final Map<FHEMRoom, FHEMRoom> rooms = new HashMap<>();
+        for (Map.Entry<FHEMDevice, Optional<FHEMSensor>> parsed : parsedSensors) {
+            final FHEMDevice d = parsed.getKey();
+            if (!parsed.getValue().isPresent()) {
+                System.err.println("Could not parse sensor! " + d.getName());
+                continue;
+            }
+            FHEMSensor sensor = parsed.getValue().get();
+            FHEMRoom appRoom = d.getAppRoom();
+            rooms.computeIfAbsent(appRoom, room -> room).addSensor(sensor);
+            sensors.putIfAbsent(sensor.getName(), sensor);
+        }
+
+        /* Parse the logs of the parsed sensors in parallel; copied sensors already have theirs */
+        final Set<FHEMSensor> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+        copied.addAll(copies.values());
+        final List<Map.Entry<FHEMSensor, FHEMDevice>> filelogs = new ArrayList<>();
+        for (Map.Entry<String, List<FHEMDevice>> entry : fileLogsBySensor.entrySet()) {
+            FHEMSensor sensor = sensors.get(entry.getKey());
+            if (sensor == null) {
+                entry.getValue().forEach(d -> System.err.println("Found 0 sensors for FileLog " + d.getName()));
+                continue;
+            }
+            if (copied.contains(sensor)) {
+                continue;
+            }
+            entry.getValue().forEach(d -> filelogs.add(new AbstractMap.SimpleImmutableEntry<>(sensor, d)));
+        }
+        final List<Map.Entry<FHEMSensor, Optional<FHEMFileLog>>> parsedLogs = filelogs.parallelStream()
+                .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().parseToLog()))
+                .collect(Collectors.toList());
+        for (Map.Entry<FHEMSensor, Optional<FHEMFileLog>> parsed : parsedLogs) {
+            parsed.getValue().ifPresent(parsed.getKey()::addLog);
+        }
+
+        for (FHEMRoom room : rooms.keySet()) {
             room.fuseSensors();
         }
-        return new FHEMModel(rooms);
+        return new FHEMModel(new HashSet<>(rooms.keySet()));
+    }
+
+    /**
+     * Combine the fingerprints of a sensor's device and of its filelogs.
+     *
+     * @param sensor   the device of the sensor
+     * @param fileLogs the devices of the filelogs of the sensor
+     * @return the fingerprint of the sensor, or null if one of the devices has none
+     */
+    private static String fingerprintOf(FHEMDevice sensor, List<FHEMDevice> fileLogs) {
+        if (sensor.getFingerprint() == null) {
+            return null;
+        }
+        final StringBuilder fingerprint = new StringBuilder(sensor.getFingerprint());
+        for (FHEMDevice fileLog : fileLogs) {
+            if (fileLog.getFingerprint() == null) {
+                return null;
+            }
+            fingerprint.append(',').append(fileLog.getFingerprint());
+        }
+        return fingerprint.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            /* every Java platform has to support SHA-256 */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        final StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Hashes all characters which are read through it.
+     */
+    private static final class FingerprintingReader extends FilterReader {
+        private final MessageDigest digest;
+        private byte[] bytes = new byte[0];
+
+        private FingerprintingReader(Reader in) {
+            super(in);
+            digest = newDigest();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int c = super.read();
+            if (c != -1) {
+                digest.update((byte) (c >> 8));
+                digest.update((byte) c);
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                if (bytes.length < 2 * read) {
+                    bytes = new byte[2 * read];
+                }
+                for (int i = 0; i < read; i++) {
+                    bytes[2 * i] = (byte) (buffer[offset + i] >> 8);
+                    bytes[2 * i + 1] = (byte) buffer[offset + i];
+                }
+                digest.update(bytes, 0, 2 * read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            /* skipped characters have to be hashed as well */
+            final char[] skipped = new char[(int) Math.min(n, 8192)];
+            final int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        private String getFingerprint() {
+            return toHex(digest.digest());
+        }
+    }
+
+    /**
+     * Binds json strings like Gson does by default, but passes every string through a rewrite function.
+     */
+    private static final class RewritingStringAdapter extends TypeAdapter<String> {
+        private final UnaryOperator<String> rewrite;
+
+        private RewritingStringAdapter(UnaryOperator<String> rewrite) {
+            this.rewrite = rewrite;
+        }
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            final JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            /* like Gson, accept booleans and numbers for string fields */
+            if (token == JsonToken.BOOLEAN) {
+                return Boolean.toString(in.nextBoolean());
+            }
+            return rewrite.apply(in.nextString());
+        }
     }
 }
@@ -13,7 +13,10 @@ import webserver.ruleCheck.rules.Rule;
 import webserver.ruleCheck.rules.RuleInfo;
 import webserver.ruleCheck.rules.RuleState;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -21,6 +24,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -46,31 +50,46 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
      */
     private List<RuleSnapshot> snapshots;
 
+    /**
+     * The rooms, sensors and logs by name. Built once, when it is first needed, because a model is not
+     * changed structurally after it was constructed, except by {@link #shareUnchangedSensors}. Not serialized.
+     */
+    private transient volatile Index index;
+
     /**
      * Construct a new model with given rooms.
+     * The rooms should contain all their sensors and logs, because they are indexed by name.
      *
      * @param rooms a set of rooms
      */
     public FHEMModel(HashSet<FHEMRoom> rooms) {
         this.rooms = rooms;
+        this.index = new Index(rooms);
     }
 
     /**
-     * Getter for a specific timeserie.
+     * Get the index of this model, building it if this model was deserialized.
      *
-     * @param filelogName the name of the desired log
-     * @return the desired timeserie, if present. Optional.empty otherwise
+     * @return the index
      */
-    private Optional getTimeserie(String filelogName) {
-        for (FHEMRoom room : rooms) {
-            for (FHEMSensor sensor : room.getSensors()) {
-                Optional<FHEMFileLog> log = sensor.getLogByName(filelogName);
-                if (log.isPresent()) {
-                    return log.get().getTimeserie();
-                }
-            }
+    private Index index() {
+        Index current = index;
+        if (current == null) {
+            /* building it twice concurrently does no harm, both results are equal */
+            current = new Index(rooms);
+            index = current;
         }
-        return Optional.empty();
+        return current;
+    }
+
+    /**
+     * Getter for a specific log.
+     *
+     * @param filelogName the name of the desired log
+     * @return the desired log, if present
+     */
+    public Optional<FHEMFileLog> getLogByName(String filelogName) {
+        return Optional.ofNullable(index().logs.get(filelogName));
     }
 
     /**
@@ -80,7 +99,7 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
      * @return the desired room, if present
      */
     public Optional<FHEMRoom> getRoomByName(String roomname) {
-        return rooms.stream().filter(r -> r.getName().equals(roomname)).findFirst();
+        return Optional.ofNullable(index().rooms.get(roomname));
     }
 
     @Override
@@ -127,9 +146,16 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
      * @return an iterator over the contained logs in this model.
      */
     public Iterator<FHEMFileLog> eachLog() {
-        HashSet<FHEMFileLog> logs = new HashSet<>();
-        forEach(room -> room.forEach(sensor -> logs.addAll(sensor.getLogs())));
-        return logs.iterator();
+        return index().logs.values().iterator();
+    }
+
+    /**
+     * Get the calendar events of this model.
+     *
+     * @return the calendar events, or null if none were set
+     */
+    public EventList getEventList() {
+        return calendarEvents;
     }
 
     public void setEventList(EventList list) {
@@ -162,13 +188,7 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
      * @return the specified room, if present
      */
     public Optional<FHEMSensor> getSensorByName(String name) {
-        for (Iterator<FHEMSensor> it = this.eachSensor(); it.hasNext(); ) {
-            FHEMSensor s = it.next();
-            if (s.getName().equals(name)) {
-                return Optional.of(s);
-            }
-        }
-        return Optional.empty();
+        return Optional.ofNullable(index().sensors.get(name));
     }
 
     /**
@@ -178,9 +198,57 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
      * @return an iterator over the contained sensors in this model.
      */
     public Iterator<FHEMSensor> eachSensor() {
-        HashSet<FHEMSensor> sensors = new HashSet<>();
-        forEach((FHEMRoom room) -> room.forEach(sensors::add));
-        return sensors.iterator();
+        return index().sensors.values().iterator();
+    }
+
+    /**
+     * Copy this model, so that readings can be changed and rules evaluated on the copy
+     * while this model is still being read. Rooms and sensors are copied, logs and calendar events are shared.
+     * Information about rules is not copied; it is computed again when the copy is evaluated.
+     *
+     * @return a copy of this model which has not been evaluated yet
+     */
+    public FHEMModel copyWithoutRuleInfos() {
+        final HashSet<FHEMRoom> roomCopies = new HashSet<>();
+        for (FHEMRoom room : rooms) {
+            final FHEMRoom roomCopy = room.copyWithoutSensors();
+            room.forEach(sensor -> roomCopy.addSensor(sensor.copyWithoutRuleInfos()));
+            roomCopies.add(roomCopy);
+        }
+        final FHEMModel copy = new FHEMModel(roomCopies);
+        copy.calendarEvents = calendarEvents;
+        return copy;
+    }
+
+    /**
+     * Put the sensors of a previous model in place of the sensors of this model which are still the same,
+     * so that sensors which did not change keep their identity from one model to the next.
+     * Has to be called after this model was evaluated, and before it is published.
+     *
+     * @param previous   the previous model, which is not changed
+     * @param candidates tests by name whether a sensor was copied from the previous model,
+     *                   or built from the same device as the sensor in the previous model
+     * @return the number of sensors which were shared
+     */
+    public int shareUnchangedSensors(FHEMModel previous, Predicate<String> candidates) {
+        int shared = 0;
+        for (FHEMRoom room : rooms) {
+            final List<FHEMSensor> unchanged = new ArrayList<>();
+            for (FHEMSensor sensor : room) {
+                if (!candidates.test(sensor.getName())) {
+                    continue;
+                }
+                previous.getSensorByName(sensor.getName())
+                        .filter(old -> old != sensor && sensor.isUnchangedFrom(old))
+                        .ifPresent(unchanged::add);
+            }
+            unchanged.forEach(room::replaceSensor);
+            shared += unchanged.size();
+        }
+        if (shared > 0) {
+            index = new Index(rooms);
+        }
+        return shared;
     }
 
     /**
@@ -204,14 +272,7 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
      * @return whether the sensor with this name exists
      */
     public boolean sensorExists(String sensorName) {
-        for (FHEMRoom room : this) {
-            for (FHEMSensor sensor : room) {
-                if (sensor.getName().equals(sensorName)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return index().sensors.containsKey(sensorName);
     }
 
     /**
@@ -225,6 +286,15 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
         this.history = history;
     }
 
+    /**
+     * Get the history of this model.
+     *
+     * @return the current sequence of events, or null if the model was not evaluated yet
+     */
+    public History getHistory() {
+        return history;
+    }
+
     /**
      * Add a state snapshot, which is a rule that is violated at this very moment.
      * Used for push notifications in the frontend.
@@ -282,4 +352,31 @@ public final class FHEMModel implements Iterable<FHEMRoom> {
             }
         }
     }
+
+    /**
+     * Unmodifiable maps from names to the rooms, sensors and logs of a model.
+     */
+    private static final class Index {
+        private final Map<String, FHEMRoom> rooms;
+        private final Map<String, FHEMSensor> sensors;
+        private final Map<String, FHEMFileLog> logs;
+
+        private Index(Set<FHEMRoom> modelRooms) {
+            final Map<String, FHEMRoom> roomsByName = new HashMap<>();
+            final Map<String, FHEMSensor> sensorsByName = new HashMap<>();
+            final Map<String, FHEMFileLog> logsByName = new HashMap<>();
+            for (FHEMRoom room : modelRooms) {
+                roomsByName.putIfAbsent(room.getName(), room);
+                for (FHEMSensor sensor : room) {
+                    sensorsByName.putIfAbsent(sensor.getName(), sensor);
+                    for (FHEMFileLog log : sensor) {
+                        logsByName.putIfAbsent(log.getName(), log);
+                    }
+                }
+            }
+            rooms = Collections.unmodifiableMap(roomsByName);
+            sensors = Collections.unmodifiableMap(sensorsByName);
+            logs = Collections.unmodifiableMap(logsByName);
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package webserver.fhemParser.fhemModel;
+
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
+import webserver.ruleCheck.RuleEvent;
+import webserver.ruleCheck.RuleSnapshot;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class describes what changed between two published models.
+ * It is not filtered by permissions; use a
+ * {@link webserver.fhemParser.fhemModel.serializers.ModelChangeSerializer ModelChangeSerializer} to serialize it.
+ */
+public final class ModelChange {
+    /**
+     * The generation of the model this change leads to.
+     */
+    private final long generation;
+
+    /**
+     * The sensors which were added or changed, as they are in the new model.
+     */
+    private final List<FHEMSensor> changedSensors;
+
+    /**
+     * The sensors which are not part of the new model anymore, as they were in the old model.
+     */
+    private final List<FHEMSensor> removedSensors;
+
+    /**
+     * The snapshots of violated rules which were not part of the old model.
+     */
+    private final List<RuleSnapshot> newSnapshots;
+
+    /**
+     * The events which were added to the history since the old model.
+     */
+    private final List<RuleEvent> newEvents;
+
+    /**
+     * Construct a change.
+     *
+     * @param generation     the generation of the new model
+     * @param changedSensors the added or changed sensors
+     * @param removedSensors the removed sensors
+     * @param newSnapshots   the new rule snapshots
+     * @param newEvents      the new history events
+     */
+    public ModelChange(long generation, List<FHEMSensor> changedSensors, List<FHEMSensor> removedSensors,
+                       List<RuleSnapshot> newSnapshots, List<RuleEvent> newEvents) {
+        this.generation = generation;
+        this.changedSensors = Collections.unmodifiableList(changedSensors);
+        this.removedSensors = Collections.unmodifiableList(removedSensors);
+        this.newSnapshots = Collections.unmodifiableList(newSnapshots);
+        this.newEvents = Collections.unmodifiableList(newEvents);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public List<FHEMSensor> getChangedSensors() {
+        return changedSensors;
+    }
+
+    public List<FHEMSensor> getRemovedSensors() {
+        return removedSensors;
+    }
+
+    public List<RuleSnapshot> getNewSnapshots() {
+        return newSnapshots;
+    }
+
+    public List<RuleEvent> getNewEvents() {
+        return newEvents;
+    }
+
+    /**
+     * Check whether anything changed at all.
+     *
+     * @return true if no sensor, snapshot or history event changed
+     */
+    public boolean isEmpty() {
+        return changedSensors.isEmpty() && removedSensors.isEmpty() && newSnapshots.isEmpty() && newEvents.isEmpty();
+    }
+}
@@ -2,6 +2,7 @@ package webserver.fhemParser.fhemModel.log;
 
 import com.google.gson.GsonBuilder;
 import webserver.Main;
+import webserver.fhemParser.fhemUtils.FHEMUtils;
 import webserver.fhemParser.fhemModel.serializers.RoundingDoubleSerializer;
 
 import java.io.BufferedReader;
@@ -80,9 +81,10 @@ public final class FHEMFileLog {
         this.path = path;
         this.name = name;
         this.switchable = switchable;
-        this.unit = getUnitInFileLog(path).orElse("No unit given");
-        this.sensorName = getSensorInFileLog(path).orElse("No sensor name given");
-        this.type = guessLogtype(path);
+        final Optional<String> firstLine = readFirstLine(path);
+        this.unit = firstLine.flatMap(FHEMFileLog::getUnitInFileLog).orElse("No unit given");
+        this.sensorName = firstLine.flatMap(FHEMFileLog::getSensorInFileLog).orElse("No sensor name given");
+        this.type = firstLine.map(this::guessLogtype).orElse(UNKNOWN);
         this.permissions = permissions;
         this.hasUsefulData = checkForData();
     }
@@ -100,18 +102,27 @@ public final class FHEMFileLog {
     }
 
     /**
-     * The filelogs in FHEM which are blessed should all be crafted in a way that the unit name appears
-     * in the third column (the first being the date). This should be the FHEM default though.
+     * Get a string which identifies the current content of the logfile on disk.
+     * It changes whenever the file is written to, without reading the file.
      *
-     * @param path the path to the FileLog. This has to be read as a file (instead of parsing it immediately)
-     *             because parsing happens later on demand but some information is necessary now.
-     * @return the name of the unit of this log
+     * @return the path, size and modification time of the logfile
+     */
+    public String getVersion() {
+        return FHEMUtils.getFileVersion(path);
+    }
+
+    /**
+     * Read the first line of a FileLog, from which the unit, the sensor and the type of the log are guessed.
+     * This has to be read as a file (instead of parsing it immediately)
+     * because parsing happens later on demand but some information is necessary now.
+     *
+     * @param path the path to the FileLog
+     * @return the first line, if the log could be read and is not empty
      */
-    private static Optional<String> getUnitInFileLog(String path) {
+    private static Optional<String> readFirstLine(String path) {
         String line;
         try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
             line = bufferedReader.readLine();
-            bufferedReader.close();
         } catch (IOException e) {
             e.printStackTrace();
             return Optional.empty();
@@ -123,6 +134,17 @@ public final class FHEMFileLog {
             }
             return Optional.empty();
         }
+        return Optional.of(line);
+    }
+
+    /**
+     * The filelogs in FHEM which are blessed should all be crafted in a way that the unit name appears
+     * in the third column (the first being the date). This should be the FHEM default though.
+     *
+     * @param line the first line of the FileLog
+     * @return the name of the unit of this log
+     */
+    private static Optional<String> getUnitInFileLog(String line) {
         String unit = line.split(" ")[2];
         if (unit.endsWith(":")) {
             unit = unit.substring(0, unit.length() - 1);
@@ -145,27 +167,10 @@ public final class FHEMFileLog {
      * The filelogs in FHEM which are blessed should all be crafted in a way that the sensor name appears
      * in the second column (the first being the date). This should be the FHEM default though.
      *
-     * @param path the path to the FileLog. This has to be read as a file (instead of parsing it immediately)
-     *             because parsing happens later on demand but the information is necessary now.
+     * @param line the first line of the FileLog
      * @return the name of the sensor this log belongs to
      */
-    private static Optional<String> getSensorInFileLog(String path) {
-        String line;
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
-            line = bufferedReader.readLine();
-            bufferedReader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return Optional.empty();
-        }
-
-        if (line == null) {
-            if (Main.PARSER_DBG) {
-                System.err.println("Could not read line in " + path + ". Presumably there are no entries in the log.");
-                System.err.println("This can happen in the beginning of the month.");
-            }
-            return Optional.empty();
-        }
+    private static Optional<String> getSensorInFileLog(String line) {
         String name = line.split(" ")[1];
         return Optional.of(name);
     }
@@ -174,25 +179,10 @@ public final class FHEMFileLog {
      * This method guesses the type of a log based on it's first line.
      * Types are defined in the logtypes enum.
      *
-     * @param path path to logfile
+     * @param line the first line of the FileLog
      * @return an estimated logtype
      */
-    private LogType guessLogtype(String path) {
-        String line;
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(path))) {
-            line = bufferedReader.readLine();
-            bufferedReader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return LogType.UNKNOWN;
-        }
-        if (line == null) {
-            if (Main.PARSER_DBG) {
-                System.err.println("Could not read line in " + path + ". Presumably there are no entries in the log.");
-                System.err.println("This can happen in the beginning of the month.");
-            }
-            return UNKNOWN;
-        }
+    private LogType guessLogtype(String line) {
         if (line.contains("%")) {
             return PERCENT;
         } else {
@@ -307,6 +297,27 @@ public final class FHEMFileLog {
                 .toJson(timeserie, Timeserie.class));
     }
 
+    /**
+     * Write a subsection of the entire timeserie based on start and end params,
+     * without building its json representation in memory first.
+     *
+     * @param startTime the unix timestamp to start with
+     * @param endTime   the unix timestamp to end with
+     * @param writer    the target of the json representation
+     * @return true if the timeserie could be read and was written, false if nothing was written
+     */
+    public boolean writeSubSection(long startTime, long endTime, Appendable writer) {
+        Optional<Timeserie> timeserie_opt = getTimeserie(startTime, endTime);
+        if (!timeserie_opt.isPresent()) {
+            return false;
+        }
+        new GsonBuilder()
+                .registerTypeAdapter(Double.class, new RoundingDoubleSerializer())
+                .create()
+                .toJson(timeserie_opt.get(), Timeserie.class, writer);
+        return true;
+    }
+
     /**
      * Parses a timeserie from disk on demand, between two unix timestamps.
      *
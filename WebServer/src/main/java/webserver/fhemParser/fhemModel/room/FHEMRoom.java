@@ -57,6 +57,26 @@ public final class FHEMRoom implements Iterable<FHEMSensor> {
         pathToHash = Paths.get(fhemPath + "roomplans/" + roomname + ".hash");
     }
 
+    /**
+     * Copy constructor which leaves out the sensors.
+     *
+     * @param other the room to copy
+     */
+    private FHEMRoom(FHEMRoom other) {
+        name = other.name;
+        pathToPlan = other.pathToPlan;
+        pathToHash = other.pathToHash;
+    }
+
+    /**
+     * Copy this room without its sensors, so that copies of the sensors can be added.
+     *
+     * @return an empty room with the same name and room plan
+     */
+    public FHEMRoom copyWithoutSensors() {
+        return new FHEMRoom(this);
+    }
+
     public String getName() {
         return name;
     }
@@ -133,6 +153,16 @@ public final class FHEMRoom implements Iterable<FHEMSensor> {
         sensors.add(sensor);
     }
 
+    /**
+     * Replace the sensor of this room which has the same name as the given sensor.
+     *
+     * @param sensor the sensor to put in place of the sensor with the same name
+     */
+    public void replaceSensor(@NotNull FHEMSensor sensor) {
+        sensors.remove(sensor);
+        sensors.add(sensor);
+    }
+
     /**
      * This method checks if this room was annotated with the 'app' tag in FHEM.
      *
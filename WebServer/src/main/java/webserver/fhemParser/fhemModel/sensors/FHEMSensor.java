@@ -11,6 +11,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
@@ -52,7 +54,7 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
     /**
      * Coordinates of sensor in percent.
      */
-    private final Coordinates coords;
+    private Coordinates coords;
     /**
      * Permissions of this sensor as set in FHEM.
      * Unused because of technical reasons:
@@ -78,6 +80,16 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
      */
     private final Set<RuleInfo> passedRules = new HashSet<>();
 
+    /**
+     * The state of the device of this sensor in FHEM, or null if it has none.
+     */
+    private transient String deviceState;
+    /**
+     * The readings of the device of this sensor which are shown, as meta information.
+     * Together with the state, the meta information is derived from them. Null for fused sensors.
+     */
+    private transient Map<String, String> readingMeta;
+
     /**
      * Whether this sensor should be shown in the application.
      */
@@ -153,6 +165,51 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
         metaInfo.put(key, value);
     }
 
+    /**
+     * Replace the meta information of this sensor.
+     *
+     * @param meta the new meta information
+     * @return true if the meta information changed
+     */
+    public boolean setMeta(Map<String, String> meta) {
+        if (metaInfo.equals(meta)) {
+            return false;
+        }
+        metaInfo.clear();
+        metaInfo.putAll(meta);
+        return true;
+    }
+
+    /**
+     * Remember the state and the shown readings of the device from which the meta information of this sensor
+     * is derived, so that it can be derived again when they change.
+     *
+     * @param state       the state of the device, or null if it has none
+     * @param readingMeta the readings of the device which are shown, as meta information
+     */
+    public void setDeviceState(String state, Map<String, String> readingMeta) {
+        this.deviceState = state;
+        this.readingMeta = readingMeta;
+    }
+
+    /**
+     * Get the state of the device of this sensor.
+     *
+     * @return the state, or empty if the device has none
+     */
+    public Optional<String> getDeviceState() {
+        return Optional.ofNullable(deviceState);
+    }
+
+    /**
+     * Get the readings of the device of this sensor which are shown, as meta information.
+     *
+     * @return the readings, or empty if this sensor was not parsed from a single device
+     */
+    public Optional<Map<String, String>> getReadingMeta() {
+        return Optional.ofNullable(readingMeta);
+    }
+
     /**
      * Add a log to this sensor.
      *
@@ -171,6 +228,22 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
         return name;
     }
 
+    /**
+     * Move this sensor. Only sensors of a model which was not published yet may be moved.
+     *
+     * @param coordX the x coordinate in percent
+     * @param coordY the y coordinate in percent
+     * @return true if the coordinates changed
+     */
+    public boolean setCoords(int coordX, int coordY) {
+        final Coordinates moved = new Coordinates(coordX, coordY);
+        if (moved.equals(coords)) {
+            return false;
+        }
+        coords = moved;
+        return true;
+    }
+
     public String getFuseTag() {
         return fuseTag;
     }
@@ -228,6 +301,68 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
         return Optional.empty();
     }
 
+    /**
+     * Copy this sensor, so that readings can be changed and rules evaluated on the copy
+     * while this sensor is still being read. The logs are shared; information about rules is not copied,
+     * because it is computed again when the copy is evaluated.
+     *
+     * @return a copy of this sensor without rule information
+     */
+    public FHEMSensor copyWithoutRuleInfos() {
+        final FHEMSensor copy = new FHEMSensor(coords.getX(), coords.getY(), name, nameInApp,
+                de_alias, en_alias, ar_alias, permissions, isVisibleInApp, new HashMap<>(metaInfo), fuseTag);
+        copy.fileLogs.addAll(fileLogs);
+        copy.icon = icon;
+        copy.switchable = switchable;
+        copy.deviceState = deviceState;
+        copy.readingMeta = readingMeta;
+        copy.importantFields.addAll(importantFields);
+        return copy;
+    }
+
+    /**
+     * Check whether this sensor is still the same as the sensor it was copied from, or as a sensor
+     * which was built from the same device: with the same attributes, readings, logs and information about rules.
+     *
+     * @param other the other sensor
+     * @return true if the sensors cannot be told apart
+     */
+    public boolean isUnchangedFrom(FHEMSensor other) {
+        return name.equals(other.name)
+                && coords.equals(other.coords)
+                && Objects.equals(nameInApp, other.nameInApp)
+                && Objects.equals(de_alias, other.de_alias)
+                && Objects.equals(en_alias, other.en_alias)
+                && Objects.equals(ar_alias, other.ar_alias)
+                && Objects.equals(permissions, other.permissions)
+                && isVisibleInApp == other.isVisibleInApp
+                && Objects.equals(fuseTag, other.fuseTag)
+                && switchable == other.switchable
+                && Objects.equals(icon, other.icon)
+                && metaInfo.equals(other.metaInfo)
+                && Objects.equals(deviceState, other.deviceState)
+                && Objects.equals(readingMeta, other.readingMeta)
+                && fileLogs.equals(other.fileLogs)
+                && importantFields.equals(other.importantFields)
+                && sameRuleInfos(passedRules, other.passedRules)
+                && sameRuleInfos(violatedRules, other.violatedRules);
+    }
+
+    private static boolean sameRuleInfos(Set<RuleInfo> infos, Set<RuleInfo> others) {
+        if (infos.size() != others.size()) {
+            return false;
+        }
+        final Map<String, RuleInfo> othersByName = new HashMap<>();
+        others.forEach(info -> othersByName.put(info.getRuleName(), info));
+        for (RuleInfo info : infos) {
+            final RuleInfo other = othersByName.get(info.getRuleName());
+            if (other == null || !info.isSameAs(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void addRuleInfo(RuleInfo info) {
         if (info.isOk()) {
             passedRules.add(info);
@@ -378,7 +513,7 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
         return true;
     }
 
-    public HashMap<String, String> getMeta() {
+    public Map<String, String> getMeta() {
         return metaInfo;
     }
 
@@ -394,6 +529,10 @@ public final class FHEMSensor implements Iterable<FHEMFileLog> {
         return permissions;
     }
 
+    public String getAlias() {
+        return nameInApp;
+    }
+
     public String getDeAlias() {
         return de_alias;
     }
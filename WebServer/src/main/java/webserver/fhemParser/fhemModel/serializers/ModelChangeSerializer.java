@@ -0,0 +1,130 @@
+package webserver.fhemParser.fhemModel.serializers;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import webserver.fhemParser.fhemModel.ModelChange;
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
+import webserver.ruleCheck.RuleEvent;
+import webserver.ruleCheck.RuleSnapshot;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * This custom serializer for a model change filters out all sensors and snapshots
+ * which the caller is not permitted to see.
+ * If nothing visible changed, the change is serialized to null.
+ */
+public final class ModelChangeSerializer implements JsonSerializer<ModelChange> {
+    /**
+     * A list of permission identifiers that are used to remove/retain sensors.
+     */
+    private final List<String> permissions;
+    /**
+     * The groups with which rule information and snapshots are filtered.
+     */
+    private final List<String> groups;
+    /**
+     * True if a change without any visible part should be serialized to null.
+     */
+    private final boolean skipEmpty;
+
+    /**
+     * Construct this serializer, setting the permissions and groups of the caller.
+     * Changes without any visible part are serialized to null.
+     *
+     * @param permissions the permissions to use as filter
+     * @param groups      the groups to apply to sensors, snapshots and history
+     */
+    public ModelChangeSerializer(List<String> permissions, List<String> groups) {
+        this(permissions, groups, true);
+    }
+
+    /**
+     * Construct this serializer, setting the permissions and groups of the caller.
+     *
+     * @param permissions the permissions to use as filter
+     * @param groups      the groups to apply to sensors, snapshots and history
+     * @param skipEmpty   true if changes without any visible part should be serialized to null
+     */
+    public ModelChangeSerializer(List<String> permissions, List<String> groups, boolean skipEmpty) {
+        this.permissions = permissions;
+        this.groups = groups;
+        this.skipEmpty = skipEmpty;
+    }
+
+    /**
+     * Serialize a change, filtered by the permissions and groups of this serializer.
+     *
+     * @param change the change to serialize
+     * @return the json string, or "null" if the caller may not see anything of this change
+     */
+    public String toJson(ModelChange change) {
+        return new GsonBuilder()
+                .registerTypeAdapter(ModelChange.class, this)
+                .create()
+                .toJson(change);
+    }
+
+    /**
+     * Custom serializer for a change, keeping only permitted sensors and snapshots.
+     *
+     * @param change the source change
+     * @return a JsonObject or jsonNull instance, depending on the permissions
+     */
+    @Override
+    public JsonElement serialize(ModelChange change, Type type, JsonSerializationContext jsc) {
+        final Gson sensorGson = new GsonBuilder()
+                .registerTypeAdapter(FHEMSensor.class, new SensorSerializer(permissions, groups))
+                .create();
+        final Gson ruleGson = new GsonBuilder()
+                .registerTypeAdapter(RuleSnapshot.class, new RuleSnapshotSerializer(groups))
+                .registerTypeAdapter(RuleEvent.class, new RuleEventSerializer(groups))
+                .create();
+
+        final JsonArray sensors = new JsonArray();
+        for (FHEMSensor sensor : change.getChangedSensors()) {
+            final JsonElement element = sensorGson.toJsonTree(sensor);
+            if (!element.isJsonNull()) {
+                sensors.add(element);
+            }
+        }
+        final JsonArray removed = new JsonArray();
+        for (FHEMSensor sensor : change.getRemovedSensors()) {
+            if (sensor.hasPermittedLogs(permissions)) {
+                removed.add(sensor.getName());
+            }
+        }
+        final JsonArray snapshots = new JsonArray();
+        for (RuleSnapshot snapshot : change.getNewSnapshots()) {
+            final JsonElement element = ruleGson.toJsonTree(snapshot);
+            if (!element.isJsonNull()) {
+                snapshots.add(element);
+            }
+        }
+        final JsonArray events = new JsonArray();
+        for (RuleEvent event : change.getNewEvents()) {
+            final JsonElement element = ruleGson.toJsonTree(event);
+            if (!element.isJsonNull()) {
+                events.add(element);
+            }
+        }
+        if (skipEmpty && sensors.size() == 0 && removed.size() == 0 && snapshots.size() == 0 && events.size() == 0) {
+            return JsonNull.INSTANCE;
+        }
+
+        final JsonObject jObj = new JsonObject();
+        jObj.addProperty("generation", change.getGeneration());
+        jObj.add("sensors", sensors);
+        jObj.add("removedSensors", removed);
+        jObj.add("snapshots", snapshots);
+        jObj.add("history", events);
+        return jObj;
+    }
+}
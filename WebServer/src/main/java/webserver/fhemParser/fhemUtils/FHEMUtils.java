@@ -1,6 +1,7 @@
 package webserver.fhemParser.fhemUtils;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Optional;
@@ -64,6 +65,18 @@ public final class FHEMUtils {
         return Optional.ofNullable(System.getenv(var));
     }
 
+    /**
+     * Get a string which identifies the current content of a file, like a logfile or the rules.
+     * It changes whenever the file is written to, without reading the file.
+     *
+     * @param path the path to the file
+     * @return the path, size and modification time of the file
+     */
+    public static String getFileVersion(String path) {
+        File file = new File(path);
+        return path + "|" + file.length() + "|" + file.lastModified();
+    }
+
     /**
      * Execute a 'whereis' command to find fhem.pl.
      *
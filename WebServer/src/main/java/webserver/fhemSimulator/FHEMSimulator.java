@@ -0,0 +1,166 @@
+package webserver.fhemSimulator;
+
+import webserver.fhemParser.fhemUtils.FHEMUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class simulates a FHEM installation of configurable size behind the stand-in telnet port,
+ * for load and scale tests of the parser, the rule checker and the server on one machine.
+ * jsonList2 renders the current state of a {@link SimulatedInstallation}; readings change at a configurable rate,
+ * are sent to clients which subscribed with 'inform', and are appended to the FileLogs.
+ * 'set' changes the state of a simulated sensor, like an actuator in FHEM.
+ */
+public class FHEMSimulator extends FHEMTelnetServer {
+    /**
+     * The interval in which events are generated, in milliseconds.
+     */
+    private static final long EVENT_TICK = 10;
+
+    private final SimulatedInstallation installation;
+    private final Random random;
+    private final AtomicLong events = new AtomicLong();
+    private volatile Thread eventThread;
+
+    /**
+     * Open the telnet port for a simulated installation. Clients are accepted after {@link #start()}.
+     *
+     * @param port         the port to listen on, or 0 to use any free port
+     * @param installation the installation to simulate
+     * @param seed         the seed for the random events
+     * @throws IOException if the port cannot be opened
+     */
+    public FHEMSimulator(int port, SimulatedInstallation installation, long seed) throws IOException {
+        super(port, installation::toJsonList2);
+        this.installation = installation;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Runs a simulated FHEM until the process is killed. The rules file is written to the simulation directory.
+     * Options, each followed by a number or path:
+     * --port (default: FHEMPORT or 7072), --rooms (10), --sensors (100), --filelogs (all sensors),
+     * --rules (20), --rate in events per second (10), --seed (0), --dir (FHEMMOCKDIR or /tmp/, plus fhemsim/)
+     *
+     * @param args the options
+     * @throws IOException if the port cannot be opened or the files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                System.err.println("Ignoring argument " + args[i]);
+            }
+        }
+        final int port = Integer.parseInt(options.getOrDefault("port", Integer.toString(FHEMUtils.getFHEMPort())));
+        final int sensors = Integer.parseInt(options.getOrDefault("sensors", "100"));
+        final long seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        final Path directory = Paths.get(options.getOrDefault("dir",
+                FHEMUtils.getGlobVar("FHEMMOCKDIR").orElse("/tmp/") + "/fhemsim/"));
+        final SimulatedInstallation installation = new SimulatedInstallation(
+                Integer.parseInt(options.getOrDefault("rooms", "10")),
+                sensors,
+                Integer.parseInt(options.getOrDefault("filelogs", Integer.toString(sensors))),
+                Integer.parseInt(options.getOrDefault("rules", "20")),
+                seed,
+                directory);
+        final Path rules = directory.resolve("rules.json");
+        Files.write(rules, installation.toRules().getBytes(StandardCharsets.UTF_8));
+        final FHEMSimulator simulator = new FHEMSimulator(port, installation, seed).start();
+        simulator.startEvents(Double.parseDouble(options.getOrDefault("rate", "10")));
+        System.out.println("Simulated FHEM with " + installation.getSensorCount() + " sensors listening on telnet port "
+                + port + ", rules written to " + rules);
+    }
+
+    @Override
+    public FHEMSimulator start() {
+        super.start();
+        return this;
+    }
+
+    /**
+     * Start changing readings on a background thread. Events which are due together are sent together.
+     *
+     * @param rate the number of events per second
+     * @return this simulator, enabling builder style
+     */
+    public synchronized FHEMSimulator startEvents(double rate) {
+        stopEvents();
+        if (rate <= 0) {
+            return this;
+        }
+        final Thread thread = new Thread(() -> generateEvents(rate), "FHEM simulator events");
+        thread.setDaemon(true);
+        eventThread = thread;
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Stop changing readings.
+     */
+    public synchronized void stopEvents() {
+        final Thread thread = eventThread;
+        eventThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Get the number of events generated so far.
+     *
+     * @return the number of changed readings
+     */
+    public long getEvents() {
+        return events.get();
+    }
+
+    @Override
+    public void close() {
+        stopEvents();
+        super.close();
+    }
+
+    @Override
+    protected String execute(String command) {
+        final String[] words = command.trim().split("\\s+", 3);
+        if (words[0].equals("set") && words.length == 3 && installation.setState(words[1], words[2])) {
+            publishEvent(installation.getType(), words[1], words[2]);
+        }
+        return super.execute(command);
+    }
+
+    private void generateEvents(double rate) {
+        final long start = System.currentTimeMillis();
+        long generated = 0;
+        while (eventThread == Thread.currentThread()) {
+            /* catch up on all events which are due by now, so the rate holds even if a tick was late */
+            final long due = (long) ((System.currentTimeMillis() - start) * rate / 1000);
+            for (; generated < due; generated++) {
+                final Optional<String[]> event_opt = installation.mutate(random);
+                if (!event_opt.isPresent()) {
+                    return;
+                }
+                publishEvent(installation.getType(), event_opt.get()[0], event_opt.get()[1]);
+                events.incrementAndGet();
+            }
+            try {
+                Thread.sleep(EVENT_TICK);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
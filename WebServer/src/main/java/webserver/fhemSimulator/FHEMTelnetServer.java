@@ -0,0 +1,279 @@
+package webserver.fhemSimulator;
+
+import webserver.fhemParser.fhemUtils.FHEMUtils;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * This class is a stand-in for the telnet port of FHEM, for running and testing the server offline.
+ * It understands the commands the server sends: jsonList2, attr, set, save, inform, and perl expressions
+ * which consist of a single string literal, like {"marker"}. Every other command is answered like FHEM
+ * answers an unknown command. Attributes and states are only recorded; they do not show up in jsonList2.
+ * Events are only sent to subscribed clients when they are published with {@link #publishEvent}.
+ * Every client is served by its own thread.
+ */
+public class FHEMTelnetServer implements Closeable {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final ServerSocket serverSocket;
+    private final Supplier<String> jsonList2;
+    /**
+     * All commands received so far, in order of arrival.
+     */
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    /**
+     * The attributes set so far, by device and attribute name.
+     */
+    private final Map<String, Map<String, String>> attributes = new ConcurrentHashMap<>();
+    /**
+     * The states set so far, by device.
+     */
+    private final Map<String, String> states = new ConcurrentHashMap<>();
+    private final Set<Socket> clients = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    /**
+     * The clients which subscribed to events, and whether they want time stamps ('inform timer').
+     */
+    private final Map<Writer, Boolean> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Open the telnet port on the loopback interface. Clients are accepted after {@link #start()}.
+     *
+     * @param port      the port to listen on, or 0 to use any free port
+     * @param jsonList2 supplies the output of jsonList2
+     * @throws IOException if the port cannot be opened
+     */
+    public FHEMTelnetServer(int port, Supplier<String> jsonList2) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.jsonList2 = jsonList2;
+    }
+
+    /**
+     * Runs a stand-in FHEM until the process is killed.
+     *
+     * @param args optional arguments: the port (default: FHEMPORT or 7072)
+     *             and the path to a jsonList2 file (default: jsonList2.json in FHEMMOCKDIR or /tmp/)
+     * @throws IOException if the port cannot be opened or the jsonList2 file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : FHEMUtils.getFHEMPort();
+        final String path = args.length > 1
+                ? args[1] : FHEMUtils.getGlobVar("FHEMMOCKDIR").orElse("/tmp/") + "/jsonList2.json";
+        final String jsonList2 = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        new FHEMTelnetServer(port, () -> jsonList2).start();
+        System.out.println("Stand-in FHEM listening on telnet port " + port);
+    }
+
+    /**
+     * Start accepting clients on a background thread.
+     *
+     * @return this server, enabling builder style
+     */
+    public FHEMTelnetServer start() {
+        final Thread acceptor = new Thread(this::accept, "FHEM stand-in on port " + getPort());
+        acceptor.start();
+        return this;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get all commands received so far.
+     *
+     * @return the commands in order of arrival
+     */
+    public List<String> getCommands() {
+        return new ArrayList<>(commands);
+    }
+
+    /**
+     * Get an attribute which was set by a client.
+     *
+     * @param device    the name of the device
+     * @param attribute the name of the attribute
+     * @return the value of the attribute, or null if it was not set
+     */
+    public String getAttribute(String device, String attribute) {
+        return attributes.getOrDefault(device, Collections.emptyMap()).get(attribute);
+    }
+
+    /**
+     * Get the state which was set by a client.
+     *
+     * @param device the name of the device
+     * @return the state, or null if it was not set
+     */
+    public String getState(String device) {
+        return states.get(device);
+    }
+
+    /**
+     * Send an event to all clients which subscribed with 'inform on' or 'inform timer'.
+     *
+     * @param type   the type of the device, like CUL_HM
+     * @param device the name of the device
+     * @param event  the event, like 'rain: 0.5' or 'on'
+     */
+    public void publishEvent(String type, String device, String event) {
+        final String line = type + " " + device + " " + event + "\n";
+        final String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT) + " ";
+        subscribers.forEach((writer, timed) -> {
+            try {
+                synchronized (writer) {
+                    writer.write(timed ? timestamp + line : line);
+                    writer.flush();
+                }
+            } catch (IOException e) {
+                subscribers.remove(writer);
+            }
+        });
+    }
+
+    /**
+     * Drop all connected clients without answering their pending commands, as if FHEM was restarted.
+     */
+    public void disconnectClients() {
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                //don't care
+            }
+        }
+    }
+
+    /**
+     * Stop accepting clients and drop all connected ones.
+     */
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //don't care
+        }
+        disconnectClients();
+    }
+
+    /**
+     * Execute a command and return what FHEM would print.
+     *
+     * @param command the command, without line break
+     * @return the output, empty if FHEM would not print anything
+     */
+    protected String execute(String command) {
+        final String[] words = command.trim().split("\\s+", 4);
+        if (command.startsWith("{") && command.endsWith("}")) {
+            final String expression = command.substring(1, command.length() - 1).trim();
+            if (expression.length() >= 2 && (expression.startsWith("\"") && expression.endsWith("\"")
+                    || expression.startsWith("'") && expression.endsWith("'"))) {
+                return expression.substring(1, expression.length() - 1);
+            }
+            return "Unsupported perl expression in the stand-in: " + expression;
+        }
+        switch (words[0]) {
+            case "jsonList2":
+                return jsonList2.get();
+            case "attr":
+                if (words.length < 3) {
+                    return "Usage: attr <name> <attribute> [<value>]";
+                }
+                attributes.computeIfAbsent(words[1], device -> new ConcurrentHashMap<>())
+                        .put(words[2], words.length > 3 ? words[3] : "1");
+                return "";
+            case "set":
+                if (words.length < 3) {
+                    return "Usage: set <name> <type-dependent-options>";
+                }
+                states.put(words[1], command.trim().split("\\s+", 3)[2]);
+                return "";
+            case "save":
+                return "";
+            default:
+                return "Unknown command " + words[0] + ", try help.";
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                clients.add(client);
+                final Thread thread = new Thread(() -> serve(client), "FHEM stand-in client " + client.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8)) {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    if (line.trim().equals("quit") || line.trim().equals("exit")) {
+                        break;
+                    }
+                    commands.add(line);
+                    final String[] words = line.trim().split("\\s+");
+                    if (words[0].equals("inform") && words.length == 2) {
+                        if (words[1].equals("off")) {
+                            subscribers.remove(writer);
+                        } else {
+                            subscribers.put(writer, words[1].equals("timer"));
+                        }
+                        continue;
+                    }
+                    final String output = execute(line);
+                    synchronized (writer) {
+                        if (!output.isEmpty()) {
+                            writer.write(output.endsWith("\n") ? output : output + "\n");
+                        }
+                        writer.flush();
+                    }
+                }
+            } finally {
+                subscribers.remove(writer);
+            }
+        } catch (IOException e) {
+            //the client is gone
+        } finally {
+            clients.remove(client);
+            try {
+                client.close();
+            } catch (IOException e) {
+                //don't care
+            }
+        }
+    }
+}
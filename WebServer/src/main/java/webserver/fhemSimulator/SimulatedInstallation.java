@@ -0,0 +1,345 @@
+package webserver.fhemSimulator;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * This class generates a synthetic FHEM installation: rooms, sensors of a few typical kinds, FileLogs and rules.
+ * Devices are tagged the way the parser expects it from a real installation, so the generated jsonList2
+ * and rules file can be fed into the server unchanged.
+ * Readings are changed by {@link #mutate(Random)}, which also appends to the FileLogs, like FHEM does.
+ * All methods are thread safe.
+ */
+public final class SimulatedInstallation {
+    /**
+     * The permission which is needed to see the simulated sensors, logs and rules.
+     */
+    public static final String PERMISSION = "S_Simulator";
+    private static final DateTimeFormatter READING_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH:mm:ss");
+
+    /**
+     * The kinds of sensors, with the readings they have and the range of their values.
+     */
+    private enum Kind {
+        CLIMATE("temperature", 15, 30, "Temperature < 26"),
+        CO2("co2", 400, 1500, "CO2 < 1000"),
+        POWER("power", 0, 2500, "Power < 2000"),
+        WINDOW(null, 0, 0, "Reading contains closed");
+
+        /**
+         * The name of the reading which changes, or null if the state changes.
+         */
+        private final String reading;
+        private final double min;
+        private final double max;
+        private final String expression;
+
+        Kind(String reading, double min, double max, String expression) {
+            this.reading = reading;
+            this.min = min;
+            this.max = max;
+            this.expression = expression;
+        }
+    }
+
+    private final List<Sensor> sensors = new ArrayList<>();
+    private final Map<String, Sensor> sensorsByName = new LinkedHashMap<>();
+    private final int rooms;
+    private final int rules;
+    private final Path directory;
+
+    /**
+     * Generate an installation. FileLogs are created in directory/log/timeseries/, each with a first entry.
+     *
+     * @param rooms     the number of rooms in the app
+     * @param sensors   the number of sensors, spread evenly over the rooms
+     * @param fileLogs  the number of sensors which have a FileLog
+     * @param rules     the number of rules
+     * @param seed      the seed for the random numbers, so that installations can be generated again
+     * @param directory the directory for the FileLogs
+     * @throws IOException if the FileLogs cannot be created
+     */
+    public SimulatedInstallation(int rooms, int sensors, int fileLogs, int rules, long seed, Path directory)
+            throws IOException {
+        this.rooms = Math.max(1, rooms);
+        this.rules = rules;
+        this.directory = directory;
+        final Random random = new Random(seed);
+        final Path logDirectory = directory.resolve("log").resolve("timeseries");
+        if (fileLogs > 0) {
+            Files.createDirectories(logDirectory);
+        }
+        final Kind[] kinds = Kind.values();
+        for (int i = 0; i < sensors; i++) {
+            final Kind kind = kinds[i % kinds.length];
+            final String name = "SIM_" + i + (kind == Kind.POWER ? "_Pwr" : "");
+            final Path log = i < fileLogs ? logDirectory.resolve(name + ".log") : null;
+            final Sensor sensor = new Sensor(name, kind, i % this.rooms, random.nextInt(101), random.nextInt(101), log);
+            if (kind == Kind.WINDOW) {
+                sensor.state = random.nextBoolean() ? "closed" : "open";
+            } else {
+                sensor.value = kind.min + random.nextDouble() * (kind.max - kind.min);
+                sensor.state = kind.reading + ": " + sensor.format();
+            }
+            sensor.time = LocalDateTime.now();
+            this.sensors.add(sensor);
+            sensorsByName.put(name, sensor);
+            if (log != null) {
+                Files.write(log, Collections.singletonList(sensor.logLine()), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Render the installation as FHEM would in jsonList2.
+     *
+     * @return the output of jsonList2
+     */
+    public synchronized String toJsonList2() {
+        final JsonArray results = new JsonArray();
+        for (Sensor sensor : sensors) {
+            results.add(sensor.toDevice());
+            if (sensor.log != null) {
+                results.add(sensor.toFileLog());
+            }
+        }
+        final JsonObject jsonList2 = new JsonObject();
+        jsonList2.addProperty("Arg", "");
+        jsonList2.add("Results", results);
+        jsonList2.addProperty("totalResultsReturned", results.size());
+        return new GsonBuilder().setPrettyPrinting().create().toJson(jsonList2);
+    }
+
+    /**
+     * Render rules about the sensors, in the format of the rules file of the server.
+     * Every rule covers up to five sensors of the same kind.
+     *
+     * @return the content of a rules file
+     */
+    public synchronized String toRules() {
+        final JsonArray array = new JsonArray();
+        final Kind[] kinds = Kind.values();
+        for (int i = 0; i < rules; i++) {
+            final Kind kind = kinds[i % kinds.length];
+            final List<Sensor> candidates = new ArrayList<>();
+            for (Sensor sensor : sensors) {
+                if (sensor.kind == kind) {
+                    candidates.add(sensor);
+                }
+            }
+            if (candidates.isEmpty()) {
+                continue;
+            }
+            /* consecutive rules of a kind cover consecutive groups of sensors, wrapping around */
+            final int first = i / kinds.length * 5;
+            final JsonArray names = new JsonArray();
+            for (int j = 0; j < Math.min(5, candidates.size()); j++) {
+                names.add(candidates.get((first + j) % candidates.size()).name);
+            }
+            final JsonObject rule = new JsonObject();
+            rule.addProperty("Name", "Simulated rule " + i);
+            rule.addProperty("Expression", kind.expression);
+            final JsonArray permissions = new JsonArray();
+            permissions.add(PERMISSION);
+            rule.add("ViewPermissions", permissions);
+            rule.add("SensorNames", names);
+            rule.addProperty("OkMessage", "all ok");
+            rule.add("RequiredAllTrue", new JsonArray());
+            rule.add("RequiredOneOfTrue", new JsonArray());
+            final JsonObject messages = new JsonObject();
+            messages.addProperty("10", "Simulated rule " + i + " is violated");
+            rule.add("ErrorMessages", messages);
+            array.add(rule);
+        }
+        final JsonObject root = new JsonObject();
+        root.add("Rules", array);
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root);
+    }
+
+    /**
+     * Change a reading of a random sensor, and append it to its FileLog.
+     *
+     * @param random the source of randomness
+     * @return the event, like FHEM prints it in its inform stream after the type: name and change;
+     * empty if there are no sensors
+     */
+    public Optional<String[]> mutate(Random random) {
+        final Sensor sensor;
+        final String change;
+        final String logLine;
+        synchronized (this) {
+            if (sensors.isEmpty()) {
+                return Optional.empty();
+            }
+            sensor = sensors.get(random.nextInt(sensors.size()));
+            final Kind kind = sensor.kind;
+            if (kind == Kind.WINDOW) {
+                sensor.state = sensor.state.equals("closed") ? "open" : "closed";
+                change = sensor.state;
+            } else {
+                /* a random walk, so that time series look plausible */
+                final double step = (kind.max - kind.min) / 50;
+                sensor.value = Math.min(kind.max, Math.max(kind.min, sensor.value + (random.nextDouble() - 0.5) * step));
+                sensor.state = kind.reading + ": " + sensor.format();
+                change = sensor.state;
+            }
+            sensor.time = LocalDateTime.now();
+            logLine = sensor.log == null ? null : sensor.logLine();
+        }
+        if (logLine != null) {
+            appendToLog(sensor.log, logLine);
+        }
+        return Optional.of(new String[]{sensor.name, change});
+    }
+
+    /**
+     * Set the state of a sensor, like 'set name on' does in FHEM.
+     *
+     * @param name  the name of the sensor
+     * @param state the new state
+     * @return true if the sensor exists
+     */
+    public boolean setState(String name, String state) {
+        final Sensor sensor;
+        final String logLine;
+        synchronized (this) {
+            sensor = sensorsByName.get(name);
+            if (sensor == null) {
+                return false;
+            }
+            sensor.state = state;
+            sensor.time = LocalDateTime.now();
+            logLine = sensor.log == null ? null : sensor.logLine();
+        }
+        if (logLine != null) {
+            appendToLog(sensor.log, logLine);
+        }
+        return true;
+    }
+
+    /**
+     * Get the type of the devices, as FHEM sends it in the inform stream.
+     *
+     * @return the type of the simulated devices
+     */
+    public String getType() {
+        return "CUL_HM";
+    }
+
+    public int getSensorCount() {
+        return sensors.size();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private static void appendToLog(Path log, String line) {
+        try {
+            Files.write(log, Collections.singletonList(line), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Simulator: could not append to " + log + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * A simulated sensor and its current readings.
+     */
+    private final class Sensor {
+        private final String name;
+        private final Kind kind;
+        private final int room;
+        private final int coordX;
+        private final int coordY;
+        private final Path log;
+        private double value;
+        private String state;
+        private LocalDateTime time;
+
+        private Sensor(String name, Kind kind, int room, int coordX, int coordY, Path log) {
+            this.name = name;
+            this.kind = kind;
+            this.room = room;
+            this.coordX = coordX;
+            this.coordY = coordY;
+            this.log = log;
+        }
+
+        private String format() {
+            return String.format("%.1f", value).replace(',', '.');
+        }
+
+        private String logLine() {
+            return time.format(LOG_TIME) + " " + name + " " + state;
+        }
+
+        private JsonObject toDevice() {
+            final JsonObject internals = new JsonObject();
+            internals.addProperty("NAME", name);
+            internals.addProperty("TYPE", getType());
+            internals.addProperty("STATE", state);
+            final JsonObject attributes = new JsonObject();
+            attributes.addProperty("room", "sensors,app,room_sim" + room);
+            attributes.addProperty("alias", "Simulated " + kind.name().toLowerCase() + " " + name);
+            attributes.addProperty("coordX", Integer.toString(coordX));
+            attributes.addProperty("coordY", Integer.toString(coordY));
+            attributes.addProperty("permissions", PERMISSION);
+            final JsonObject readings = new JsonObject();
+            readings.add("state", reading(state));
+            if (kind.reading != null) {
+                readings.add(kind.reading, reading(format()));
+            }
+            final JsonObject device = new JsonObject();
+            device.addProperty("Name", name);
+            device.addProperty("PossibleSets", "");
+            device.addProperty("PossibleAttrs", "");
+            device.add("Internals", internals);
+            device.add("Readings", readings);
+            device.add("Attributes", attributes);
+            return device;
+        }
+
+        private JsonObject toFileLog() {
+            final JsonObject internals = new JsonObject();
+            internals.addProperty("NAME", "FileLog_" + name);
+            internals.addProperty("TYPE", "FileLog");
+            internals.addProperty("REGEXP", name + ":.*");
+            internals.addProperty("currentlogfile", log.toString());
+            internals.addProperty("logfile", log.toString());
+            final JsonObject attributes = new JsonObject();
+            attributes.addProperty("room", "app");
+            attributes.addProperty("permissions", PERMISSION);
+            final JsonObject device = new JsonObject();
+            device.addProperty("Name", "FileLog_" + name);
+            device.add("Internals", internals);
+            device.add("Readings", new JsonObject());
+            device.add("Attributes", attributes);
+            return device;
+        }
+
+        private JsonObject reading(String value) {
+            final JsonObject reading = new JsonObject();
+            reading.addProperty("Value", value);
+            reading.addProperty("Time", time.format(READING_TIME));
+            return reading;
+        }
+    }
+}
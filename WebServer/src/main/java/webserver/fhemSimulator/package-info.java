@@ -0,0 +1,6 @@
+/**
+ * This package contains a stand-in for FHEM, so that the server can be run and tested without an installation.
+ * It speaks the subset of the telnet protocol which the server uses.
+ * The simulator generates installations of any size and changes their readings, for load and scale tests.
+ */
+package webserver.fhemSimulator;
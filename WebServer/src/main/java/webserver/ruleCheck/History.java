@@ -1,5 +1,6 @@
 package webserver.ruleCheck;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
@@ -43,6 +44,26 @@ public final class History {
         events.sort(Comparator.comparingLong(RuleEvent::getStartTime).reversed());
     }
 
+    /**
+     * Copy this history, so that the copy is not affected by events which are added later.
+     *
+     * @return a new history with the same events
+     */
+    public History copy() {
+        final History copy = new History();
+        copy.events.addAll(events);
+        return copy;
+    }
+
+    /**
+     * Get the recorded events, the latest first.
+     *
+     * @return a copy of the events
+     */
+    public List<RuleEvent> getEvents() {
+        return new ArrayList<>(events);
+    }
+
     @Override
     public String toString() {
         StringBuilder stringBuilder = new StringBuilder();
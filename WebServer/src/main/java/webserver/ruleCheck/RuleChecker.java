@@ -2,6 +2,7 @@ package webserver.ruleCheck;
 
 import com.google.gson.JsonSyntaxException;
 import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemUtils.FHEMUtils;
 import webserver.ruleCheck.parsing.RuleParamCollection;
 import webserver.ruleCheck.rules.Rule;
 import webserver.ruleCheck.rules.RuleState;
@@ -29,6 +30,12 @@ public final class RuleChecker {
      * The static state of FHEM, consisting of passed and violated rules and their history.
      */
     private final State fhemState = new State();
+    /**
+     * The path and version of the rules file which was read last, and the parameters read from it.
+     * The file is only read again if it changed.
+     */
+    private String rulesVersion;
+    private RuleParamCollection ruleParams;
 
     /*
     prevent empty construction
@@ -56,8 +63,15 @@ public final class RuleChecker {
      */
     private Optional<Set<Rule>> getRules(String path) {
         RuleParamCollection params;
+        final String version = FHEMUtils.getFileVersion(path);
         try {
-            params = loadRuleParams(path);
+            synchronized (this) {
+                if (!version.equals(rulesVersion)) {
+                    ruleParams = loadRuleParams(path);
+                    rulesVersion = version;
+                }
+                params = ruleParams;
+            }
         } catch (IOException e) {
             System.err.println("The file " + path + " could not be read because there was an IO exception.");
             return Optional.empty();
@@ -88,6 +102,20 @@ public final class RuleChecker {
         rules_opt.ifPresent(rules -> evaluate(model, rules));
     }
 
+    /**
+     * Evaluate only the rules which depend on the time, on a model whose readings did not change
+     * since it was last evaluated, and annotate it with the state of all rules.
+     * The model must not have been annotated yet.
+     *
+     * @param model the model to evaluate
+     * @param path  the path to the set of rules
+     */
+    public void evaluateTimeDependent(FHEMModel model, String path) {
+        Optional<Set<Rule>> rules_opt = getRules(path);
+        rules_opt.ifPresent(rules -> evaluate(model, rules, rules.stream()
+                .filter(Rule::dependsOnTime).collect(Collectors.toSet())));
+    }
+
     /**
      * Evaluate a model given a set of rules.
      *
@@ -95,7 +123,18 @@ public final class RuleChecker {
      * @param rules the set of rules
      */
     private void evaluate(FHEMModel model, Set<Rule> rules) {
-        Set<RuleState> states = rules.stream().map(rule -> rule.eval(model)).collect(Collectors.toSet());
+        evaluate(model, rules, rules);
+    }
+
+    /**
+     * Evaluate some of the rules on a model; the others keep their previous state.
+     *
+     * @param model     the model to evaluate
+     * @param rules     the set of all rules
+     * @param evaluated the rules to evaluate
+     */
+    private void evaluate(FHEMModel model, Set<Rule> rules, Set<Rule> evaluated) {
+        Set<RuleState> states = evaluated.stream().map(rule -> rule.eval(model)).collect(Collectors.toSet());
         //fhemState.prune(rules);
         fhemState.update(states, rules, model);
         fhemState.apply(model, rules);
@@ -119,7 +158,9 @@ public final class RuleChecker {
      * Completely reset the FHEM state.
      * Useful for unit tests.
      */
-    public void clear() {
+    public synchronized void clear() {
         fhemState.clear();
+        rulesVersion = null;
+        ruleParams = null;
     }
 }
@@ -6,6 +6,7 @@ import webserver.ruleCheck.rules.Rule;
 import webserver.ruleCheck.rules.RuleState;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -83,14 +84,16 @@ class State {
 
    /**
      * Attach RuleInfos to all sensors with current warning messages.
+     * The model gets its own copies of the history and the snapshots,
+     * since they are changed by the next evaluation while the model might still be read.
      *
      * @param model the model which should be annotated. RuleInfos will be added for the sensors.
      */
     void apply(FHEMModel model, Set<Rule> rules) {
         //prune(model);
-        model.setHistory(history);
+        model.setHistory(history.copy());
         model.applyInfo(stateMap);
-        model.addStateSnapshot(snapshots);
+        model.addStateSnapshot(Collections.unmodifiableList(new ArrayList<>(snapshots)));
     }
 
     private void updateSnapshot(Set<Rule> rules) {
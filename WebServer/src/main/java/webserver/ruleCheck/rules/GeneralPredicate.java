@@ -28,6 +28,16 @@ public final class GeneralPredicate extends Rule {
         super(ruleParam);
     }
 
+    /**
+     * The predicates in the collection depend on the time of day, the date or the weather.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean isTimeDependent() {
+        return true;
+    }
+
     /**
      * Specific evaluation of a general predicate on a model.
      *
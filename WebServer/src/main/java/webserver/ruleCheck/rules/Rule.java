@@ -220,6 +220,46 @@ public abstract class Rule {
         return relatedLogNames;
     }
 
+    /**
+     * Whether the result of this rule itself can change while the model stays the same,
+     * e.g. because it depends on the time of day. Rules which only compare readings are not.
+     *
+     * @return true if this rule has to be evaluated again even on an unchanged model
+     */
+    protected boolean isTimeDependent() {
+        return false;
+    }
+
+    /**
+     * Whether the result of this rule can change while the model stays the same,
+     * because this rule or one of its prerequisites is time dependent.
+     *
+     * @return true if this rule has to be evaluated again even on an unchanged model
+     */
+    public boolean dependsOnTime() {
+        return dependsOnTime(new HashSet<>());
+    }
+
+    private boolean dependsOnTime(Set<Rule> visitedRules) {
+        if (!visitedRules.add(this)) {
+            return false;
+        }
+        if (isTimeDependent()) {
+            return true;
+        }
+        for (Rule rule : andRules) {
+            if (rule.dependsOnTime(visitedRules)) {
+                return true;
+            }
+        }
+        for (Rule rule : orRules) {
+            if (rule.dependsOnTime(visitedRules)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Specific evaluation of a concrete rule on a model.
      *
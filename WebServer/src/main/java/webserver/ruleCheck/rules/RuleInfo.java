@@ -4,6 +4,7 @@ import com.google.gson.annotations.SerializedName;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -119,6 +120,23 @@ public final class RuleInfo {
         isOk = false;
     }
 
+    /**
+     * Check whether another info says the same about its rule as this one.
+     * Unlike {@link #equals(Object)}, which only compares the names of the rules, every field is compared.
+     *
+     * @param other the other info
+     * @return true if the infos cannot be told apart
+     */
+    public boolean isSameAs(RuleInfo other) {
+        return ruleName.equals(other.ruleName)
+                && isOk == other.isOk
+                && message.equals(other.message)
+                && hasNewMessage == other.hasNewMessage
+                && priority == other.priority
+                && relatedLogNames.equals(other.relatedLogNames)
+                && Objects.equals(permissions, other.permissions);
+    }
+
     @Override
     public int hashCode() {
         return ruleName.hashCode();
@@ -30,6 +30,16 @@ public final class SensorPredicate extends Rule {
         super(ruleParam);
     }
 
+    /**
+     * The predicates of sensors may depend on the time or on chance.
+     *
+     * @return true
+     */
+    @Override
+    protected boolean isTimeDependent() {
+        return true;
+    }
+
     /**
      * Specific evaluation of a sensor predicate rule on a model.
      *
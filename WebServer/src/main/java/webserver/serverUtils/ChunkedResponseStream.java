@@ -0,0 +1,156 @@
+package webserver.serverUtils;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class streams a response body from a worker thread into a chunked response.
+ * Bytes are collected into chunks of a fixed size, and every full chunk is handed to the event loop
+ * which owns the response. The writing thread waits until the chunk is written or at least queued
+ * without filling the write queue, so at most a few chunks of a response are held in memory.
+ * Nothing is sent before the first chunk is full, so a failing producer can still be answered with an error.
+ * It has to be constructed on the event loop of the response, and written by one thread only.
+ */
+public final class ChunkedResponseStream extends OutputStream {
+    /**
+     * The time in milliseconds to wait for a slow client to take a chunk.
+     */
+    private static final long WRITE_TIMEOUT = 30 * 1000;
+    private final Context context;
+    private final HttpServerResponse response;
+    private final byte[] chunk;
+    private int position = 0;
+    /**
+     * True as soon as the first chunk is handed to the response, i.e. the status and headers are sent.
+     */
+    private volatile boolean committed = false;
+    /**
+     * True if the client closed the connection.
+     */
+    private volatile boolean closed = false;
+    /**
+     * Released as soon as the last chunk is written, or the connection is closed.
+     */
+    private volatile CountDownLatch pending;
+
+    /**
+     * Turn a response into a chunked response which is written by this stream.
+     *
+     * @param context   the context of the event loop which owns the response
+     * @param response  the response, with status and headers already set
+     * @param chunkSize the size of a chunk in bytes
+     */
+    public ChunkedResponseStream(Context context, HttpServerResponse response, int chunkSize) {
+        this.context = context;
+        this.response = response;
+        this.chunk = new byte[chunkSize];
+        response.setChunked(true);
+        response.closeHandler(v -> {
+            closed = true;
+            final CountDownLatch latch = pending;
+            if (latch != null) {
+                latch.countDown();
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == chunk.length) {
+            send(false);
+        }
+        chunk[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == chunk.length) {
+                send(false);
+            }
+            final int count = Math.min(length, chunk.length - position);
+            System.arraycopy(bytes, offset, chunk, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Send the remaining bytes and end the response.
+     *
+     * @throws IOException if the client closed the connection or did not take the data in time
+     */
+    @Override
+    public void close() throws IOException {
+        send(true);
+    }
+
+    /**
+     * Give up on the response after a failure of the producer.
+     * If nothing was sent yet, the response is left untouched and can still be answered with an error;
+     * otherwise the connection is closed, because the client would only get a truncated body.
+     */
+    public void abort() {
+        if (committed) {
+            context.runOnContext(v -> {
+                if (!closed) {
+                    response.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Check whether the status and headers are already sent.
+     *
+     * @return true if at least one chunk was handed to the response
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    private void send(boolean last) throws IOException {
+        if (closed) {
+            throw new IOException("The client closed the connection");
+        }
+        final Buffer buffer = Buffer.buffer(position).appendBytes(chunk, 0, position);
+        position = 0;
+        final CountDownLatch latch = new CountDownLatch(1);
+        pending = latch;
+        committed = true;
+        context.runOnContext(v -> {
+            if (closed) {
+                latch.countDown();
+            } else if (last) {
+                response.end(buffer);
+                latch.countDown();
+            } else {
+                response.write(buffer);
+                if (response.writeQueueFull()) {
+                    response.drainHandler(drained -> latch.countDown());
+                } else {
+                    latch.countDown();
+                }
+            }
+        });
+        try {
+            if (!latch.await(WRITE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                throw new IOException("The client did not take the response in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (closed && !last) {
+            throw new IOException("The client closed the connection");
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package webserver.serverUtils;
+
+import io.vertx.core.shareddata.Shareable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class compresses response bodies and keeps the compressed bytes of cacheable payloads,
+ * so that every payload is compressed at most once per encoding.
+ * Payloads are identified by a key which changes whenever their content changes, e.g. an entity tag.
+ * The least recently used payloads are dropped first.
+ * All methods are thread safe, so one instance can be shared by all server verticles.
+ */
+public final class CompressedPayloadCache implements Shareable {
+    /**
+     * The gzip content coding.
+     */
+    public static final String GZIP = "gzip";
+    /**
+     * The deflate (zlib) content coding.
+     */
+    public static final String DEFLATE = "deflate";
+    /**
+     * Measures the cpu time spent compressing, if the jvm supports it.
+     */
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    /**
+     * The compressed payloads by encoding and key, in access order.
+     */
+    private final Map<String, byte[]> payloads;
+    /**
+     * The number of payloads which had to be compressed.
+     */
+    private final AtomicLong compressions = new AtomicLong();
+    /**
+     * The number of payloads which were answered from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * The summed up size of all compressed payloads before compression.
+     */
+    private final AtomicLong plainBytes = new AtomicLong();
+    /**
+     * The summed up size of all compressed payloads after compression.
+     */
+    private final AtomicLong compressedBytes = new AtomicLong();
+    /**
+     * The summed up cpu time in nanoseconds spent compressing.
+     */
+    private final AtomicLong cpuTime = new AtomicLong();
+
+    /**
+     * Construct an empty cache.
+     *
+     * @param maxEntries the maximum number of compressed payloads to keep
+     */
+    public CompressedPayloadCache(int maxEntries) {
+        this.payloads = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Choose a content coding which the client accepts, as told by its 'Accept-Encoding' header.
+     * Gzip is preferred over deflate if the client rates them equally.
+     *
+     * @param acceptEncoding the value of the header, may be null
+     * @return the content coding, or empty if the body should be sent uncompressed
+     */
+    public static Optional<String> negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return Optional.empty();
+        }
+        double gzipQuality = 0;
+        double deflateQuality = 0;
+        double wildcardQuality = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                final String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            switch (name) {
+                case GZIP:
+                    gzipQuality = quality;
+                    break;
+                case DEFLATE:
+                    deflateQuality = quality;
+                    break;
+                case "*":
+                    wildcardQuality = quality;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (gzipQuality == 0 && !acceptEncoding.toLowerCase().contains(GZIP)) {
+            gzipQuality = wildcardQuality;
+        }
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return Optional.of(GZIP);
+        }
+        if (deflateQuality > 0) {
+            return Optional.of(DEFLATE);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Get a compressed payload, if it is cached.
+     *
+     * @param key      the key which identifies the content of the payload
+     * @param encoding the content coding
+     * @return the compressed bytes, or empty if they have to be computed
+     */
+    public synchronized Optional<byte[]> get(String key, String encoding) {
+        final byte[] compressed = payloads.get(encoding + ":" + key);
+        if (compressed != null) {
+            hits.incrementAndGet();
+        }
+        return Optional.ofNullable(compressed);
+    }
+
+    /**
+     * Compress a payload while it is written, and store it once it is complete, if it has a key.
+     * The compressed bytes are passed on to the target as they are produced;
+     * closing the returned stream finishes the compression and closes the target.
+     * A payload whose stream is not closed, e.g. because its producer failed, is not stored.
+     *
+     * @param key      the key which identifies the content of the payload, or null if it should not be cached
+     * @param encoding the content coding, {@link #GZIP} or {@link #DEFLATE}
+     * @param target   the stream which receives the compressed bytes
+     * @return the stream to write the plain payload to
+     * @throws IOException if the target cannot be written
+     */
+    public OutputStream compressTo(String key, String encoding, OutputStream target) throws IOException {
+        return new CompressingStream(key, encoding, target);
+    }
+
+    private static long currentCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    public long getCompressions() {
+        return compressions.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the ratio of compressed to plain size over all compressed payloads.
+     *
+     * @return the ratio between 0 and 1, or 1 if nothing was compressed yet
+     */
+    public double getRatio() {
+        long plain = plainBytes.get();
+        return plain == 0 ? 1.0 : (double) compressedBytes.get() / plain;
+    }
+
+    /**
+     * Get the cpu time spent compressing.
+     *
+     * @return the cpu time in milliseconds
+     */
+    public double getCpuTime() {
+        return cpuTime.get() / 1e6;
+    }
+
+    /**
+     * A stream which compresses a payload into a target, keeps a copy of the compressed bytes
+     * if the payload should be cached, and accounts for the work in the statistics of the cache.
+     */
+    private final class CompressingStream extends OutputStream {
+        private final String key;
+        private final String encoding;
+        private final OutputStream target;
+        private final ByteArrayOutputStream copy;
+        private final DeflaterOutputStream compressor;
+        private long plain = 0;
+        private long compressed = 0;
+
+        private CompressingStream(String key, String encoding, OutputStream target) throws IOException {
+            this.key = key;
+            this.encoding = encoding;
+            this.target = target;
+            this.copy = key == null ? null : new ByteArrayOutputStream();
+            final OutputStream sink = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    compressed += length;
+                    if (copy != null) {
+                        copy.write(bytes, offset, length);
+                    }
+                    target.write(bytes, offset, length);
+                }
+            };
+            this.compressor = GZIP.equals(encoding) ? new GZIPOutputStream(sink) : new DeflaterOutputStream(sink);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            final long start = currentCpuTime();
+            compressor.write(bytes, offset, length);
+            cpuTime.addAndGet(currentCpuTime() - start);
+            plain += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            final long start = currentCpuTime();
+            compressor.finish();
+            cpuTime.addAndGet(currentCpuTime() - start);
+            compressions.incrementAndGet();
+            plainBytes.addAndGet(plain);
+            compressedBytes.addAndGet(compressed);
+            if (copy != null) {
+                synchronized (CompressedPayloadCache.this) {
+                    payloads.put(encoding + ":" + key, copy.toByteArray());
+                }
+            }
+            target.close();
+        }
+    }
+
+    /**
+     * Get the number of compressed payloads which are currently cached.
+     *
+     * @return the number of cached payloads
+     */
+    public synchronized int size() {
+        return payloads.size();
+    }
+}
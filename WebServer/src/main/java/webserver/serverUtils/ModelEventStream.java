@@ -0,0 +1,205 @@
+package webserver.serverUtils;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerResponse;
+import webserver.fhemParser.fhemModel.ModelChange;
+import webserver.fhemParser.fhemModel.serializers.ModelChangeSerializer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * This class pushes model changes to subscribed clients as server-sent events.
+ * Subscribers with the same permissions and groups share one subscription,
+ * so every change is serialized once per combination and not once per client.
+ * Between changes, subscribers cost nothing but an occasional heartbeat.
+ * The permissions and groups are looked up once, when a client subscribes: streams have to be ended
+ * when they change or when the session of the subscriber ends, so that the client subscribes again.
+ * It is not thread safe; all methods have to be called on the event loop of the owning verticle.
+ */
+public final class ModelEventStream {
+    private final Vertx vertx;
+    /**
+     * The subscriptions by their sorted permissions and groups.
+     */
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+
+    /**
+     * Construct a stream without subscribers.
+     *
+     * @param vertx the vertx instance used to serialize changes on a worker thread
+     */
+    public ModelEventStream(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Turn a response into an event stream and subscribe it to model changes.
+     * The subscription ends when the client closes the connection.
+     *
+     * @param response    the response of the subscribing request
+     * @param username    the name of the subscriber
+     * @param token       the session token the subscriber authenticated with, or null for BasicAuth
+     * @param permissions the permissions of the subscriber
+     * @param groups      the groups of the subscriber
+     */
+    public void subscribe(HttpServerResponse response, String username, String token,
+                          List<String> permissions, List<String> groups) {
+        final String key = key(permissions) + "|" + key(groups);
+        final Subscription subscription =
+                subscriptions.computeIfAbsent(key, k -> new Subscription(key, permissions, groups));
+        response.setChunked(true)
+                .putHeader("Content-Type", "text/event-stream")
+                .putHeader("Cache-Control", "no-cache")
+                .write("retry: 5000\n\n");
+        subscription.responses.put(response, new Subscriber(username, token));
+        response.closeHandler(v -> remove(subscription, response));
+    }
+
+    private void remove(Subscription subscription, HttpServerResponse response) {
+        subscription.responses.remove(response);
+        if (subscription.responses.isEmpty()) {
+            subscriptions.remove(subscription.key, subscription);
+        }
+    }
+
+    /**
+     * Write to all event streams of a subscription.
+     * A client which does not keep up is disconnected rather than buffering every change for it;
+     * it reconnects on its own and catches up with a delta.
+     *
+     * @param subscription the subscription
+     * @param text         the text to write
+     */
+    private void write(Subscription subscription, String text) {
+        for (HttpServerResponse response : new ArrayList<>(subscription.responses.keySet())) {
+            if (response.writeQueueFull()) {
+                remove(subscription, response);
+                response.close();
+            } else {
+                response.write(text);
+            }
+        }
+    }
+
+    /**
+     * End the event streams of a subscriber whose session or permissions changed.
+     * A client whose session is still valid subscribes again, with its current permissions and groups.
+     *
+     * @param username the name of the subscriber
+     * @param token    only end the streams which were opened with this session token; null to end all of them
+     */
+    public void end(String username, String token) {
+        endIf(subscriber -> subscriber.username.equals(username)
+                && (token == null || token.equals(subscriber.token)));
+    }
+
+    /**
+     * Push a change to all subscribers which may see any part of it.
+     *
+     * @param change the change of the model
+     */
+    public void publish(ModelChange change) {
+        if (change.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : new ArrayList<>(subscriptions.values())) {
+            vertx.<String>executeBlocking(future -> future.complete(
+                    new ModelChangeSerializer(subscription.permissions, subscription.groups).toJson(change)),
+                    false, res -> {
+                        if (res.failed()) {
+                            res.cause().printStackTrace();
+                            return;
+                        }
+                        if (res.result().equals("null")) {
+                            return;
+                        }
+                        final String event = "id: " + change.getGeneration() + "\n"
+                                + "event: update\n"
+                                + "data: " + res.result() + "\n\n";
+                        write(subscription, event);
+                    });
+        }
+    }
+
+    /**
+     * Send a comment to all subscribers, so that idle connections are not dropped by proxies.
+     * The streams of subscribers whose session token expired or was revoked are ended instead.
+     *
+     * @param isValidToken tells whether a session token is still valid
+     */
+    public void heartbeat(Predicate<String> isValidToken) {
+        endIf(subscriber -> subscriber.token != null && !isValidToken.test(subscriber.token));
+        new ArrayList<>(subscriptions.values()).forEach(subscription -> write(subscription, ": keep-alive\n\n"));
+    }
+
+    private void endIf(Predicate<Subscriber> condition) {
+        for (Subscription subscription : new ArrayList<>(subscriptions.values())) {
+            for (Map.Entry<HttpServerResponse, Subscriber> response : new ArrayList<>(subscription.responses.entrySet())) {
+                if (condition.test(response.getValue())) {
+                    /* the connection might be kept alive, so the close handler is not necessarily called */
+                    remove(subscription, response.getKey());
+                    response.getKey().end();
+                }
+            }
+        }
+    }
+
+    /**
+     * End all event streams.
+     */
+    public void close() {
+        for (Subscription subscription : new ArrayList<>(subscriptions.values())) {
+            new ArrayList<>(subscription.responses.keySet()).forEach(HttpServerResponse::end);
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Get the number of subscribed clients.
+     *
+     * @return the number of open event streams
+     */
+    public int size() {
+        return subscriptions.values().stream().mapToInt(subscription -> subscription.responses.size()).sum();
+    }
+
+    private static String key(List<String> identifiers) {
+        final List<String> sorted = new ArrayList<>(identifiers);
+        sorted.sort(null);
+        return String.join(",", sorted);
+    }
+
+    /**
+     * All subscribers with the same permissions and groups.
+     */
+    private static final class Subscription {
+        private final String key;
+        private final List<String> permissions;
+        private final List<String> groups;
+        private final Map<HttpServerResponse, Subscriber> responses = new LinkedHashMap<>();
+
+        private Subscription(String key, List<String> permissions, List<String> groups) {
+            this.key = key;
+            this.permissions = permissions;
+            this.groups = groups;
+        }
+    }
+
+    /**
+     * The user behind an event stream, and how they authenticated.
+     */
+    private static final class Subscriber {
+        private final String username;
+        private final String token;
+
+        private Subscriber(String username, String token) {
+            this.username = username;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * This package contains utilities for the responses of the server, like content negotiation, compression and chunked streaming.
+ */
+package webserver.serverUtils;
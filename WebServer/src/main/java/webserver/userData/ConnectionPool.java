@@ -0,0 +1,229 @@
+package webserver.userData;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.jdbc.JDBCClient;
+import io.vertx.ext.sql.SQLConnection;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * This class hands out pooled database connections for single operations.
+ * Every operation gets its own connection, which is given back to the pool as soon as the operation finished,
+ * so concurrent requests do not have to wait for each other.
+ * If no connection can be acquired within the configured time, the operation fails instead of waiting forever.
+ * All methods are thread safe.
+ */
+public final class ConnectionPool {
+    private final Vertx vertx;
+    private final JDBCClient client;
+    /**
+     * The time in milliseconds after which waiting for a connection fails.
+     */
+    private final long acquireTimeout;
+    /**
+     * The counters of this pool, shared by all pools on the same data source.
+     */
+    private final Statistics statistics;
+
+    /**
+     * Construct a pool on top of a JDBC client.
+     *
+     * @param vertx          the vertx instance used for the acquisition timeout
+     * @param client         the client which holds the actual connections
+     * @param acquireTimeout the time in milliseconds after which waiting for a connection fails
+     * @param statistics     the counters to update
+     */
+    public ConnectionPool(Vertx vertx, JDBCClient client, long acquireTimeout, Statistics statistics) {
+        this.vertx = vertx;
+        this.client = client;
+        this.acquireTimeout = acquireTimeout;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Run a database operation on a pooled connection.
+     * The connection is given back to the pool before the result is passed on.
+     *
+     * @param operation the operation, which gets a connection and a handler it has to call exactly once
+     * @param next      Handler which gets called, whenever the operation has been finished
+     * @param <T>       the type of the result of the operation
+     */
+    public <T> void execute(BiConsumer<SQLConnection, Handler<AsyncResult<T>>> operation,
+                            Handler<AsyncResult<T>> next) {
+        acquire(res -> {
+            if (res.failed()) {
+                next.handle(Future.failedFuture(res.cause()));
+                return;
+            }
+            final SQLConnection connection = res.result();
+            try {
+                operation.accept(connection, result -> {
+                    giveBack(connection);
+                    next.handle(result);
+                });
+            } catch (RuntimeException e) {
+                giveBack(connection);
+                next.handle(Future.failedFuture(e));
+            }
+        });
+    }
+
+    /**
+     * Get a connection from the client, or fail once the acquisition timeout is reached.
+     * A connection which arrives after the timeout is given back immediately.
+     *
+     * @param next Handler which gets called with the connection
+     */
+    private void acquire(Handler<AsyncResult<SQLConnection>> next) {
+        final long start = System.currentTimeMillis();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final long timerID = vertx.setTimer(acquireTimeout, id -> {
+            if (done.compareAndSet(false, true)) {
+                statistics.timeouts.incrementAndGet();
+                next.handle(Future.failedFuture(
+                        new IllegalStateException("no database connection available after " + acquireTimeout + "ms")));
+            }
+        });
+        client.getConnection(res -> {
+            if (!done.compareAndSet(false, true)) {
+                /* Timed out already, nobody is waiting for this connection */
+                if (res.succeeded()) {
+                    res.result().close();
+                }
+                return;
+            }
+            vertx.cancelTimer(timerID);
+            if (res.failed()) {
+                statistics.failures.incrementAndGet();
+                next.handle(Future.failedFuture(res.cause()));
+                return;
+            }
+            final long wait = System.currentTimeMillis() - start;
+            statistics.acquired.incrementAndGet();
+            statistics.totalWait.addAndGet(wait);
+            statistics.maxWait.accumulateAndGet(wait, Math::max);
+            statistics.maxInUse.accumulateAndGet(statistics.inUse.incrementAndGet(), Math::max);
+            next.handle(Future.succeededFuture(res.result()));
+        });
+    }
+
+    private void giveBack(SQLConnection connection) {
+        statistics.inUse.decrementAndGet();
+        connection.close(res -> {
+            if (res.failed()) {
+                res.cause().printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Get the underlying client, e.g. for an authentication provider.
+     *
+     * @return the JDBC client
+     */
+    public JDBCClient getClient() {
+        return client;
+    }
+
+    /**
+     * The counters of one or more pools on the same data source.
+     * They can be shared by the pools of all server verticles.
+     */
+    public static final class Statistics implements Shareable {
+        /**
+         * The maximum number of connections of the data source.
+         */
+        private final int maxSize;
+        /**
+         * The number of connections which are currently handed out.
+         */
+        private final AtomicInteger inUse = new AtomicInteger();
+        /**
+         * The highest number of connections which were handed out at the same time.
+         */
+        private final AtomicInteger maxInUse = new AtomicInteger();
+        /**
+         * The number of successfully acquired connections.
+         */
+        private final AtomicLong acquired = new AtomicLong();
+        /**
+         * The summed up time in milliseconds operations had to wait for a connection.
+         */
+        private final AtomicLong totalWait = new AtomicLong();
+        /**
+         * The longest time in milliseconds an operation had to wait for a connection.
+         */
+        private final AtomicLong maxWait = new AtomicLong();
+        /**
+         * The number of acquisitions which ran into the timeout.
+         */
+        private final AtomicLong timeouts = new AtomicLong();
+        /**
+         * The number of acquisitions which failed, e.g. because the database is offline.
+         */
+        private final AtomicLong failures = new AtomicLong();
+
+        /**
+         * Construct counters for a data source.
+         *
+         * @param maxSize the maximum number of connections of the data source
+         */
+        public Statistics(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getInUse() {
+            return inUse.get();
+        }
+
+        public int getMaxInUse() {
+            return maxInUse.get();
+        }
+
+        public long getAcquired() {
+            return acquired.get();
+        }
+
+        public long getMaxWait() {
+            return maxWait.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Get the ratio of connections which are currently in use.
+         *
+         * @return the utilisation between 0 and 1
+         */
+        public double getUtilisation() {
+            return maxSize == 0 ? 0.0 : (double) inUse.get() / maxSize;
+        }
+
+        /**
+         * Get the average time operations had to wait for a connection.
+         *
+         * @return the average wait time in milliseconds, or 0 if no connection was acquired yet
+         */
+        public double getAverageWait() {
+            long count = acquired.get();
+            return count == 0 ? 0.0 : (double) totalWait.get() / count;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package webserver.userData;
+
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches the permissions and groups of users, so that authenticated requests
+ * do not need to query the database every time.
+ * Entries expire after a configurable time to live, and the number of cached users is bounded.
+ * The least recently used entries are dropped first.
+ * All methods are thread safe, so one instance can be shared by all server verticles.
+ */
+public final class PermissionCache implements Shareable {
+    /**
+     * The time in milliseconds after which a cached entry is considered stale.
+     */
+    private final long timeToLive;
+    /**
+     * The maximum number of users for which permissions and groups are kept.
+     */
+    private final int maxEntries;
+    /**
+     * Cached permissions per user name, in access order.
+     */
+    private final Map<String, CachedList> permissions;
+    /**
+     * Cached groups per user name, in access order.
+     */
+    private final Map<String, CachedList> groups;
+    /**
+     * Incremented on every invalidation.
+     * A lookup which started before an invalidation must not put its (possibly stale) result in the cache.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+    /**
+     * The number of lookups which were answered from the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    /**
+     * The number of lookups which had to query the database.
+     */
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * The number of entries which were removed because the cache was full.
+     */
+    private final AtomicLong evictions = new AtomicLong();
+    /**
+     * The number of explicit invalidations.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Construct a cache.
+     *
+     * @param timeToLive the time in milliseconds after which an entry expires
+     * @param maxEntries the maximum number of users for which entries are kept
+     */
+    public PermissionCache(long timeToLive, int maxEntries) {
+        this.timeToLive = timeToLive;
+        this.maxEntries = maxEntries;
+        this.permissions = createLruMap();
+        this.groups = createLruMap();
+    }
+
+    /**
+     * Create a map which keeps its entries in access order and drops the eldest one once it is full.
+     *
+     * @return an empty, bounded map
+     */
+    private Map<String, CachedList> createLruMap() {
+        return new LinkedHashMap<String, CachedList>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedList> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the current epoch. It has to be passed back when storing the result of a lookup.
+     *
+     * @return the current epoch
+     */
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Get the cached permissions of a user, if present and not expired.
+     *
+     * @param username the name of the user
+     * @return the permissions, or empty if they have to be read from the database
+     */
+    public Optional<List<String>> getPermissions(String username) {
+        return lookup(permissions, username);
+    }
+
+    /**
+     * Get the cached groups of a user, if present and not expired.
+     *
+     * @param username the name of the user
+     * @return the groups, or empty if they have to be read from the database
+     */
+    public Optional<List<String>> getGroups(String username) {
+        return lookup(groups, username);
+    }
+
+    /**
+     * Store the permissions of a user which were read from the database.
+     *
+     * @param username    the name of the user
+     * @param list        the permissions
+     * @param lookupEpoch the epoch at the time the database query was started
+     */
+    public void putPermissions(String username, List<String> list, long lookupEpoch) {
+        store(permissions, username, list, lookupEpoch);
+    }
+
+    /**
+     * Store the groups of a user which were read from the database.
+     *
+     * @param username    the name of the user
+     * @param list        the groups
+     * @param lookupEpoch the epoch at the time the database query was started
+     */
+    public void putGroups(String username, List<String> list, long lookupEpoch) {
+        store(groups, username, list, lookupEpoch);
+    }
+
+    /**
+     * Remove all cached information about a user.
+     * This has to be called whenever the permissions or groups of a user change.
+     *
+     * @param username the name of the user
+     */
+    public synchronized void invalidate(String username) {
+        epoch.incrementAndGet();
+        invalidations.incrementAndGet();
+        permissions.remove(username);
+        groups.remove(username);
+    }
+
+    /**
+     * Remove all cached entries.
+     */
+    public synchronized void invalidateAll() {
+        epoch.incrementAndGet();
+        invalidations.incrementAndGet();
+        permissions.clear();
+        groups.clear();
+    }
+
+    private synchronized Optional<List<String>> lookup(Map<String, CachedList> map, String username) {
+        CachedList cached = map.get(username);
+        if (cached == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        if (cached.expiry < System.currentTimeMillis()) {
+            map.remove(username);
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(cached.list);
+    }
+
+    private synchronized void store(Map<String, CachedList> map, String username, List<String> list,
+                                    long lookupEpoch) {
+        if (lookupEpoch != epoch.get()) {
+            /* The user was invalidated while the database was queried, the result might be stale */
+            return;
+        }
+        map.put(username, new CachedList(list, System.currentTimeMillis() + timeToLive));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Get the ratio of lookups which could be answered from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if there were no lookups yet
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * Get the number of users for which permissions are currently cached.
+     *
+     * @return the number of cached users
+     */
+    public synchronized int size() {
+        return permissions.size();
+    }
+
+    /**
+     * An immutable list of strings together with the time at which it expires.
+     */
+    private static final class CachedList {
+        private final List<String> list;
+        private final long expiry;
+
+        private CachedList(List<String> list, long expiry) {
+            this.list = Collections.unmodifiableList(new ArrayList<>(list));
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package webserver.userData;
+
+import io.vertx.core.shareddata.Shareable;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps opaque bearer tokens which are handed out after a successful login.
+ * A request presenting a valid token is authenticated without a database lookup or password hash computation.
+ * Tokens expire after a configurable time and are revoked when the password of their user changes
+ * or the account is deleted.
+ * All methods are thread safe, so one instance can be shared by all server verticles.
+ */
+public final class SessionStore implements Shareable {
+    /**
+     * The number of random bytes in a token.
+     */
+    private static final int TOKEN_BYTES = 32;
+    /**
+     * The source of randomness for new tokens.
+     */
+    private final SecureRandom random = new SecureRandom();
+    /**
+     * All valid (or not yet purged) sessions by their token.
+     */
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    /**
+     * The time in milliseconds after which a token expires.
+     */
+    private final long timeToLive;
+
+    /**
+     * Construct an empty session store.
+     *
+     * @param timeToLive the time in milliseconds after which a token expires
+     */
+    public SessionStore(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Create a new session for an already authenticated user.
+     *
+     * @param username the name of the user
+     * @return the token which identifies the new session
+     */
+    public String createToken(String username) {
+        final byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        final String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(username, System.currentTimeMillis() + timeToLive));
+        return token;
+    }
+
+    /**
+     * Get the user a token belongs to. Expired tokens are removed.
+     *
+     * @param token the token presented by the caller
+     * @return the name of the user, or empty if the token is unknown or expired
+     */
+    public Optional<String> getUsername(String token) {
+        final Session session = sessions.get(token);
+        if (session == null) {
+            return Optional.empty();
+        }
+        if (session.expiry < System.currentTimeMillis()) {
+            sessions.remove(token);
+            return Optional.empty();
+        }
+        return Optional.of(session.username);
+    }
+
+    /**
+     * Get the time at which a token expires.
+     *
+     * @param token the token
+     * @return the expiry as unix timestamp in milliseconds, or empty if the token is unknown
+     */
+    public Optional<Long> getExpiry(String token) {
+        final Session session = sessions.get(token);
+        return session == null ? Optional.empty() : Optional.of(session.expiry);
+    }
+
+    /**
+     * Revoke a single token.
+     *
+     * @param token the token to revoke
+     */
+    public void revoke(String token) {
+        sessions.remove(token);
+    }
+
+    /**
+     * Revoke all tokens of a user.
+     *
+     * @param username the name of the user
+     */
+    public void revokeAll(String username) {
+        sessions.values().removeIf(session -> session.username.equals(username));
+    }
+
+    /**
+     * Remove all expired sessions.
+     */
+    public void purgeExpired() {
+        final long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.expiry < now);
+    }
+
+    /**
+     * Get the number of sessions which are currently stored.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * A user name together with the time at which the session expires.
+     */
+    private static final class Session {
+        private final String username;
+        private final long expiry;
+
+        private Session(String username, long expiry) {
+            this.username = username;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package webserver.userData;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.AbstractUser;
+import io.vertx.ext.auth.AuthProvider;
+
+/**
+ * A user which was authenticated by a session token instead of a password.
+ * The principal has the same layout as the one of a user authenticated by JDBC.
+ * Permissions are never checked through this object; the server looks them up itself.
+ */
+public final class SessionUser extends AbstractUser {
+    /**
+     * The principal of this user, containing the username.
+     */
+    private final JsonObject principal;
+
+    /**
+     * Construct a user for a session.
+     *
+     * @param username the name of the user the session belongs to
+     */
+    public SessionUser(String username) {
+        this.principal = new JsonObject().put("username", username);
+    }
+
+    @Override
+    protected void doIsPermitted(String permission, Handler<AsyncResult<Boolean>> resultHandler) {
+        resultHandler.handle(Future.succeededFuture(false));
+    }
+
+    @Override
+    public JsonObject principal() {
+        return principal;
+    }
+
+    @Override
+    public void setAuthProvider(AuthProvider authProvider) {
+        /* No provider needed, the session store already authenticated this user */
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains helpers for the user data which the server keeps in its database,
+ * like a cache for the permissions and groups of authenticated users, a store for session tokens
+ * and a pool of database connections.
+ */
+package webserver.userData;
@@ -0,0 +1,308 @@
+package webserver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import webserver.fhemParser.fhemConnection.FHEMAsyncCon;
+import webserver.fhemParser.fhemConnection.FHEMConnection;
+import webserver.fhemParser.fhemConnection.FHEMEvent;
+import webserver.fhemParser.fhemConnection.FHEMInformStream;
+import webserver.fhemParser.fhemConnection.FHEMTelnetCon;
+import webserver.fhemParser.fhemJson.FHEMDevice;
+import webserver.fhemParser.fhemJson.JsonList2;
+import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
+import webserver.fhemSimulator.FHEMSimulator;
+import webserver.fhemSimulator.FHEMTelnetServer;
+import webserver.fhemSimulator.SimulatedInstallation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * This class contains tests for the telnet connection to FHEM.
+ * They run against the stand-in FHEM telnet server, so they do not need an installation of FHEM.
+ */
+public class FHEMConnectionTest {
+    private static final String JSONLIST2 = "{\n  \"Arg\":\"\",\n  \"Results\": [\n  ],\n  \"totalResultsReturned\":0\n}";
+    private FHEMTelnetServer fhem;
+    private FHEMTelnetCon connection;
+
+    /**
+     * Holds the files of simulated installations, deleted after every test.
+     */
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void startFHEM() throws IOException {
+        fhem = new FHEMTelnetServer(0, () -> JSONLIST2).start();
+        connection = new FHEMTelnetCon("localhost", fhem.getPort(), 2);
+    }
+
+    @After
+    public void stopFHEM() {
+        connection.close();
+        fhem.close();
+    }
+
+    @Test
+    public void testJsonList2() throws Exception {
+        assert connection.getJsonList2().equals(JSONLIST2);
+    }
+
+    @Test
+    public void testStreamJsonList2() throws Exception {
+        try (BufferedReader reader = new BufferedReader(connection.openJsonList2())) {
+            assert reader.lines().collect(Collectors.joining("\n")).equals(JSONLIST2);
+        }
+        try (Reader reader = connection.openJsonList2()) {
+            assert JsonList2.parseFrom(reader, UnaryOperator.identity()).toFHEMModel() != null;
+        }
+        try (Reader reader = connection.openJsonList2("room=sensors")) {
+            assert JsonList2.parseFrom(reader, UnaryOperator.identity()).toFHEMModel() != null;
+        }
+        assert fhem.getCommands().contains("jsonList2 room=sensors");
+        /* a stream which is closed early does not disturb the following commands */
+        connection.openJsonList2().close();
+        assert connection.getJsonList2().equals(JSONLIST2);
+        assert connection.perlCommand("save");
+    }
+
+    @Test
+    public void testPerlCommand() throws Exception {
+        assert connection.perlCommand("attr HM_4F5DAA_Rain coordX 42");
+        assert connection.perlCommand("set HM_4F5DAA_Rain on");
+        assert "42".equals(fhem.getAttribute("HM_4F5DAA_Rain", "coordX"));
+        assert "on".equals(fhem.getState("HM_4F5DAA_Rain"));
+        assert !connection.perlCommand("nonsense");
+        Optional<String> output = connection.execCommand("nonsense");
+        assert output.isPresent() && output.get().startsWith("Unknown command");
+    }
+
+    @Test
+    public void testPerlCommandBatch() throws Exception {
+        List<String> outputs = connection.perlCommandBatch(Arrays.asList(
+                "attr HM_4F5DAA_Rain coordX 10", "nonsense", "attr HM_4F5DAA_Rain coordY 20", "save"));
+        assert outputs.size() == 4;
+        assert outputs.get(0).isEmpty() && outputs.get(2).isEmpty() && outputs.get(3).isEmpty();
+        assert outputs.get(1).startsWith("Unknown command");
+        assert "10".equals(fhem.getAttribute("HM_4F5DAA_Rain", "coordX"));
+        assert "20".equals(fhem.getAttribute("HM_4F5DAA_Rain", "coordY"));
+    }
+
+    @Test
+    public void testPipelining() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final int x = i;
+                results.add(executor.submit(() -> connection.perlCommand("attr sensor" + x + " coordX " + x)));
+                results.add(executor.submit(() -> connection.getJsonList2().equals(JSONLIST2)));
+            }
+            for (Future<Boolean> result : results) {
+                assert result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < 100; i++) {
+            assert Integer.toString(i).equals(fhem.getAttribute("sensor" + i, "coordX"));
+        }
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        assert connection.perlCommand("save");
+        fhem.disconnectClients();
+        /* the broken connection is detected by the first command, at the latest, and opened again */
+        try {
+            connection.perlCommand("save");
+        } catch (IOException e) {
+            //expected if the disconnect was not noticed before
+        }
+        assert connection.perlCommand("save");
+        assert connection.getJsonList2().equals(JSONLIST2);
+    }
+
+    @Test
+    public void testInformStream() throws Exception {
+        List<FHEMEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch received = new CountDownLatch(5);
+        FHEMInformStream stream = new FHEMInformStream("localhost", fhem.getPort(), batch -> {
+            events.addAll(batch);
+            batch.forEach(event -> received.countDown());
+        }, () -> {
+        }).start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!fhem.getCommands().contains("inform timer")) {
+                assert System.currentTimeMillis() < deadline : "the stream did not subscribe";
+                Thread.sleep(10);
+            }
+            fhem.publishEvent("CUL_HM", "HM_4F5DAA_Rain", "rain: 0.5");
+            fhem.publishEvent("CUL_HM", "HM_520B89", "on");
+            fhem.publishEvent("Global", "global", "DEFINED HM_4F5DAA");
+            fhem.publishEvent("Global", "global", "ATTR HM_4F5DAA coordX 42");
+            fhem.publishEvent("Global", "global", "SAVE");
+            assert received.await(5, TimeUnit.SECONDS);
+        } finally {
+            stream.close();
+        }
+        assert events.get(0).getDevice().equals("HM_4F5DAA_Rain");
+        assert events.get(0).getReading().equals("rain") && events.get(0).getValue().equals("0.5");
+        assert events.get(0).getTimestamp() != null;
+        assert events.get(1).getReading().equals(FHEMEvent.STATE) && events.get(1).getValue().equals("on");
+        assert !events.get(1).isStructural() && events.get(2).isStructural();
+        assert !events.get(2).getAttributeChange().isPresent() && !events.get(2).isSave();
+        Optional<String[]> attribute_opt = events.get(3).getAttributeChange();
+        assert attribute_opt.isPresent() && Arrays.equals(attribute_opt.get(), new String[]{"HM_4F5DAA", "coordX", "42"});
+        assert events.get(4).isSave() && !events.get(4).getAttributeChange().isPresent();
+    }
+
+    @Test
+    public void testPerlCommandBatchAsync() throws Exception {
+        List<String> outputs = connection.perlCommandBatchAsync(
+                Arrays.asList("attr HM_4F5DAA_Rain coordX 30", "nonsense"), null).get(5, TimeUnit.SECONDS);
+        assert outputs.size() == 2 && outputs.get(0).isEmpty() && outputs.get(1).startsWith("Unknown command");
+        assert "30".equals(fhem.getAttribute("HM_4F5DAA_Rain", "coordX"));
+    }
+
+    @Test
+    public void testAsyncInFlightLimit() throws Exception {
+        CountDownLatch answer = new CountDownLatch(1);
+        /* a connection which blocks until the latch is released, like a FHEM which hangs */
+        FHEMConnection slow = new FHEMConnection() {
+            @Override
+            public String getJsonList2() {
+                return JSONLIST2;
+            }
+
+            @Override
+            public String getJsonList2(int port, String pathToFHEM) {
+                return JSONLIST2;
+            }
+
+            @Override
+            public Optional<String> execCommand(String command) {
+                return Optional.of("");
+            }
+
+            @Override
+            public boolean perlCommand(String command) {
+                return true;
+            }
+
+            @Override
+            public List<String> perlCommandBatch(List<String> commands) throws IOException {
+                try {
+                    answer.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                List<String> outputs = new ArrayList<>();
+                commands.forEach(command -> outputs.add(""));
+                return outputs;
+            }
+        };
+        try (FHEMAsyncCon async = new FHEMAsyncCon(slow, 2, 300)) {
+            List<CompletableFuture<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                results.add(async.perlCommandBatch(Arrays.asList("save")));
+            }
+            assert async.getInFlight() == 2 && async.getWaiting() == 1;
+            for (CompletableFuture<List<String>> result : results) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    assert false;
+                } catch (ExecutionException e) {
+                    assert e.getCause() instanceof TimeoutException;
+                }
+            }
+            /* timed out batches free their slot, even though the connection still blocks */
+            for (int i = 0; i < 100 && (async.getInFlight() > 0 || async.getTimedOut() < 3); i++) {
+                Thread.sleep(10);
+            }
+            assert async.getTimedOut() == 3 && async.getInFlight() == 0 && async.getWaiting() == 0;
+            answer.countDown();
+            assert async.perlCommandBatch(Arrays.asList("save")).get(5, TimeUnit.SECONDS).get(0).isEmpty();
+        }
+    }
+
+    /**
+     * Test that a sensor to which events were applied is the same as the sensor parsed from jsonList2 afterwards.
+     */
+    @Test
+    public void testEventsLikeParsing() throws Exception {
+        SimulatedInstallation installation = new SimulatedInstallation(2, 8, 0, 0, 1,
+                folder.newFolder("fhemsim").toPath());
+        FHEMModel model = JsonList2.parseFrom(new StringReader(installation.toJsonList2()), UnaryOperator.identity())
+                .toFHEMModel();
+        Random random = new Random(2);
+        for (int i = 0; i < 40; i++) {
+            String[] event = installation.mutate(random).orElseThrow(AssertionError::new);
+            FHEMSensor sensor = model.getSensorByName(event[0]).orElseThrow(AssertionError::new);
+            /* FHEM announces the changed reading, then the state */
+            FHEMEvent.parse("CUL_HM " + event[0] + " " + event[1]).ifPresent(reading ->
+                    FHEMDevice.applyReading(sensor, reading.getReading(), reading.getValue()));
+            FHEMDevice.applyReading(sensor, FHEMEvent.STATE, event[1]);
+        }
+        /* the state changes kind, so the meta information derived from the former state has to go */
+        for (String state : Arrays.asList("Usage: 5", "Disk_Usage: 7", "on")) {
+            assert installation.setState("SIM_0", state) && installation.setState("SIM_2_Pwr", state);
+            FHEMDevice.applyReading(model.getSensorByName("SIM_0").orElseThrow(AssertionError::new),
+                    FHEMEvent.STATE, state);
+            FHEMDevice.applyReading(model.getSensorByName("SIM_2_Pwr").orElseThrow(AssertionError::new),
+                    FHEMEvent.STATE, state);
+        }
+        FHEMModel parsed = JsonList2.parseFrom(new StringReader(installation.toJsonList2()), UnaryOperator.identity())
+                .toFHEMModel();
+        for (Iterator<FHEMSensor> it = parsed.eachSensor(); it.hasNext(); ) {
+            FHEMSensor sensor = it.next();
+            assert sensor.getMeta().equals(model.getSensorByName(sensor.getName())
+                    .orElseThrow(AssertionError::new).getMeta()) : sensor.getName();
+        }
+    }
+
+    @Test
+    public void testSimulator() throws Exception {
+        SimulatedInstallation installation = new SimulatedInstallation(3, 12, 6, 4, 1,
+                folder.newFolder("fhemsim").toPath());
+        try (FHEMSimulator simulator = new FHEMSimulator(0, installation, 1).start();
+             FHEMTelnetCon simulated = new FHEMTelnetCon("localhost", simulator.getPort(), 1)) {
+            try (Reader reader = simulated.openJsonList2()) {
+                assert JsonList2.parseFrom(reader, UnaryOperator.identity()).toFHEMModel() != null;
+            }
+            assert simulated.perlCommand("set SIM_3 tilted");
+            assert simulated.getJsonList2().contains("\"STATE\": \"tilted\"");
+            simulator.startEvents(1000);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (simulator.getEvents() < 10) {
+                assert System.currentTimeMillis() < deadline : "the simulator did not generate events";
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -132,6 +132,51 @@ public class ModelTest {
         System.out.println(count + " logs.");
     }
 
+    /**
+     * Test that a copy of the model can be changed without changing the published model.
+     */
+    @Test
+    public void modelCopy() {
+        Optional<FHEMModel> model_opt = FHEMParser.getInstance().getFHEMModel();
+        assert model_opt.isPresent();
+        FHEMModel model = model_opt.get();
+        FHEMModel copy = model.copyWithoutRuleInfos();
+        for (Iterator<FHEMSensor> it = model.eachSensor(); it.hasNext(); ) {
+            FHEMSensor sensor = it.next();
+            Optional<FHEMSensor> copied_opt = copy.getSensorByName(sensor.getName());
+            assert copied_opt.isPresent() && copied_opt.get() != sensor;
+            assert copied_opt.get().getMeta().equals(sensor.getMeta());
+            assert copied_opt.get().getLogs().equals(sensor.getLogs());
+            assert copied_opt.get().getRuleInfos().isEmpty();
+            copied_opt.get().addMeta("copied", "true");
+            assert !sensor.getMeta().containsKey("copied");
+        }
+    }
+
+    /**
+     * Test that only the unchanged sensors of a copy are replaced by the sensors of the model it was copied from.
+     */
+    @Test
+    public void modelShareUnchangedSensors() {
+        Optional<FHEMModel> model_opt = FHEMParser.getInstance().getFHEMModel();
+        assert model_opt.isPresent();
+        FHEMModel model = model_opt.get().copyWithoutRuleInfos();
+        FHEMModel copy = model.copyWithoutRuleInfos();
+        Iterator<FHEMSensor> it = copy.eachSensor();
+        assert it.hasNext();
+        FHEMSensor changed = it.next();
+        changed.addMeta("copied", "true");
+        int shared = copy.shareUnchangedSensors(model, name -> true);
+        int count = 0;
+        for (it = copy.eachSensor(); it.hasNext(); count++) {
+            FHEMSensor sensor = it.next();
+            Optional<FHEMSensor> original_opt = model.getSensorByName(sensor.getName());
+            assert original_opt.isPresent();
+            assert (original_opt.get() == sensor) == (sensor != changed);
+        }
+        assert shared == count - 1;
+    }
+
     /**
      * This test checks the time it takes to parse the raw FHEM model without handling any serialization or permissions.
      */
@@ -0,0 +1,88 @@
+package webserver.fhemParser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This class contains tests for the queue which coalesces commands to actuators.
+ * Commands are sent to a stub, which completes them only when told to.
+ */
+public class ActuatorQueueTest {
+    private final List<String> sentCommands = new ArrayList<>();
+    private final List<CompletableFuture<Boolean>> results = new ArrayList<>();
+    private final ActuatorQueue queue = new ActuatorQueue((device, state) -> {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        sentCommands.add(device + " " + state);
+        results.add(result);
+        return result;
+    });
+
+    @Test
+    public void testNewestStateReplacesUnsent() {
+        final CompletableFuture<Optional<String>> first = queue.request("lamp", "on");
+        final CompletableFuture<Optional<String>> second = queue.request("lamp", "off");
+        final CompletableFuture<Optional<String>> third = queue.request("lamp", "on");
+        final CompletableFuture<Optional<String>> fourth = queue.request("lamp", "dim50");
+        /* only the first command is in flight, the others wait for it */
+        assert sentCommands.equals(Collections.singletonList("lamp on"));
+        results.get(0).complete(true);
+        /* the intermediate states are never sent */
+        assert sentCommands.equals(Arrays.asList("lamp on", "lamp dim50"));
+        assert !first.isDone();
+        results.get(1).complete(true);
+
+        /* every caller gets the state FHEM settled on, not the one it requested */
+        for (CompletableFuture<Optional<String>> waiter : Arrays.asList(first, second, third, fourth)) {
+            assert waiter.isDone();
+            assert waiter.join().equals(Optional.of("dim50"));
+        }
+        assert queue.getRequested() == 4;
+        assert queue.getSent() == 2;
+        assert queue.getCoalesced() == 2;
+    }
+
+    @Test
+    public void testDevicesAreIndependent() {
+        final CompletableFuture<Optional<String>> lamp = queue.request("lamp", "on");
+        final CompletableFuture<Optional<String>> heater = queue.request("heater", "off");
+        assert sentCommands.equals(Arrays.asList("lamp on", "heater off"));
+        results.get(1).complete(true);
+        assert heater.join().equals(Optional.of("off"));
+        assert !lamp.isDone();
+        results.get(0).complete(true);
+        assert lamp.join().equals(Optional.of("on"));
+
+        /* once the queue of a device ran empty, the next command is sent right away */
+        queue.request("lamp", "off");
+        assert sentCommands.size() == 3;
+    }
+
+    @Test
+    public void testFailedSends() {
+        final CompletableFuture<Optional<String>> first = queue.request("lamp", "on");
+        final CompletableFuture<Optional<String>> second = queue.request("lamp", "off");
+        results.get(0).complete(true);
+        results.get(1).complete(false);
+        /* the last accepted state is what FHEM settled on */
+        assert first.join().equals(Optional.of("on"));
+        assert second.join().equals(Optional.of("on"));
+
+        final CompletableFuture<Optional<String>> failed = queue.request("lamp", "off");
+        results.get(2).completeExceptionally(new IllegalStateException("FHEM is gone"));
+        assert failed.join().equals(Optional.empty());
+
+        /* a send which throws does not leave the device blocked */
+        final ActuatorQueue throwing = new ActuatorQueue((device, state) -> {
+            throw new IllegalStateException("no connection");
+        });
+        assert throwing.request("lamp", "on").join().equals(Optional.empty());
+        assert throwing.request("lamp", "off").join().equals(Optional.empty());
+        assert throwing.getSent() == 2;
+    }
+}
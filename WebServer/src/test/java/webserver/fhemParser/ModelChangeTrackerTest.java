@@ -0,0 +1,140 @@
+package webserver.fhemParser;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemModel.ModelChange;
+import webserver.fhemParser.fhemModel.room.FHEMRoom;
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
+import webserver.ruleCheck.History;
+import webserver.ruleCheck.RuleEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * This class contains tests for the computation of deltas between models.
+ * The models are built by hand, so they do not need FHEM or its state files.
+ */
+public class ModelChangeTrackerTest {
+
+    @Test
+    public void testSinceBoundaries() {
+        final ModelChangeTracker tracker = new ModelChangeTracker(3);
+        assert !tracker.since(0).isPresent();
+        for (int generation = 1; generation <= 5; generation++) {
+            tracker.update(generation, model(null, sensor("a", Integer.toString(generation))));
+        }
+        /* generations 3 to 5 are kept, so a client at generation 2 can still be served */
+        assert tracker.since(2).isPresent();
+        assert tracker.since(2).get().getGeneration() == 5;
+        assert !tracker.since(1).isPresent();
+        assert tracker.since(5).isPresent();
+        assert tracker.since(5).get().isEmpty();
+        assert !tracker.since(6).isPresent();
+    }
+
+    @Test
+    public void testMergeChangedAndRemoved() {
+        final ModelChangeTracker tracker = new ModelChangeTracker(10);
+        final FHEMSensor a = sensor("a", "1");
+        final FHEMSensor b = sensor("b", "1");
+        final FHEMSensor c = sensor("c", "1");
+        tracker.update(1, model(null, a, b, c));
+        final FHEMSensor a2 = sensor("a", "2");
+        tracker.update(2, model(null, a2, c));
+        final FHEMSensor a3 = sensor("a", "3");
+        final FHEMSensor b3 = sensor("b", "3");
+        tracker.update(3, model(null, a3, b3));
+
+        final ModelChange change = tracker.since(1).get();
+        assert change.getGeneration() == 3;
+        /* a sensor which changed several times appears once, in its latest version */
+        assert names(change.getChangedSensors()).equals(Arrays.asList("a", "b"));
+        assert change.getChangedSensors().get(0) == a3;
+        assert change.getChangedSensors().get(1) == b3;
+        assert names(change.getRemovedSensors()).equals(Collections.singletonList("c"));
+
+        /* a sensor which changed and then disappeared is only removed */
+        tracker.update(4, model(null, a3));
+        final ModelChange later = tracker.since(2).get();
+        assert names(later.getChangedSensors()).equals(Collections.singletonList("a"));
+        assert names(later.getRemovedSensors()).equals(Arrays.asList("c", "b"));
+    }
+
+    @Test
+    public void testUnchangedSensors() {
+        final ModelChangeTracker tracker = new ModelChangeTracker(10);
+        final FHEMSensor a = sensor("a", "1");
+        tracker.update(1, model(null, a, sensor("b", "1")));
+        /* the same instance and an equal copy are both unchanged */
+        final ModelChange change = tracker.update(2, model(null, a, sensor("b", "1")));
+        assert change.isEmpty();
+        assert !tracker.updateIfChanged(3, model(null, a, sensor("b", "1"))).isPresent();
+        /* nothing was recorded for the generation which did not change */
+        assert !tracker.since(3).isPresent();
+        final Optional<ModelChange> changed = tracker.updateIfChanged(3, model(null, a, sensor("b", "2")));
+        assert changed.isPresent();
+        assert names(changed.get().getChangedSensors()).equals(Collections.singletonList("b"));
+    }
+
+    @Test
+    public void testEventsAreMergedOnce() {
+        final ModelChangeTracker tracker = new ModelChangeTracker(10);
+        final FHEMSensor a = sensor("a", "1");
+        final RuleEvent first = event("first", 1);
+        final RuleEvent second = event("second", 2);
+        tracker.update(1, model(history()));
+        tracker.update(2, model(history(first), a));
+        /* an event which drops out of the history and comes back is new again in a single change */
+        tracker.update(3, model(history(), a));
+        tracker.update(4, model(history(first, second), a));
+        assert tracker.since(3).get().getNewEvents().size() == 2;
+
+        final List<RuleEvent> events = tracker.since(1).get().getNewEvents();
+        assert events.size() == 2;
+        assert events.get(0) == first;
+        assert events.get(1) == second;
+    }
+
+    private static FHEMSensor sensor(String name, String value) {
+        final HashMap<String, String> meta = new HashMap<>();
+        meta.put("Value", value);
+        return new FHEMSensor(10, 20, name, name, name, name, name,
+                Collections.singletonList("permission"), true, meta, "");
+    }
+
+    private static FHEMModel model(History history, FHEMSensor... sensors) {
+        final FHEMRoom room = new FHEMRoom("room_test");
+        for (FHEMSensor sensor : sensors) {
+            room.addSensor(sensor);
+        }
+        final FHEMModel model = new FHEMModel(new HashSet<>(Collections.singletonList(room)));
+        if (history != null) {
+            model.setHistory(history);
+        }
+        return model;
+    }
+
+    private static History history(RuleEvent... events) {
+        final History history = new History();
+        for (RuleEvent event : events) {
+            history.add(event);
+        }
+        return history;
+    }
+
+    private static RuleEvent event(String ruleName, long startTime) {
+        return new Gson().fromJson("{\"ruleName\":\"" + ruleName + "\",\"startTime\":" + startTime + "}",
+                RuleEvent.class);
+    }
+
+    private static List<String> names(List<FHEMSensor> sensors) {
+        return sensors.stream().map(FHEMSensor::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,70 @@
+package webserver.ruleCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import webserver.fhemParser.fhemModel.FHEMModel;
+import webserver.fhemParser.fhemModel.room.FHEMRoom;
+import webserver.fhemParser.fhemModel.sensors.FHEMSensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * This class contains tests for the rule state which is attached to evaluated models.
+ * The models are built by hand, so they do not need FHEM or its state files.
+ */
+public class StateTest {
+    private static final String RULES = "{\"Rules\": [{"
+            + "\"Name\": \"dry\", \"Expression\": \"Reading matches dry\","
+            + "\"ViewPermissions\": [\"permission0\"], \"SensorNames\": [\"Rain\"],"
+            + "\"OkMessage\": \"all ok\", \"RequiredAllTrue\": [], \"RequiredOneOfTrue\": [],"
+            + "\"ErrorMessages\": {\"10\": \"wet\"}}]}";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    @After
+    public void cleanState() {
+        RuleChecker.getInstance().clear();
+    }
+
+    @Test
+    public void testEvaluatedModelsAreNotChangedLater() throws IOException {
+        final File rules = folder.newFile("rules.json");
+        Files.write(rules.toPath(), RULES.getBytes(StandardCharsets.UTF_8));
+
+        final FHEMModel wet = model("rain");
+        RuleChecker.getInstance().evaluate(wet, rules.getPath());
+        assert wet.getSnapshots().size() == 1;
+        assert wet.getHistory().getEvents().isEmpty();
+
+        /* the rule passes again: a history event is recorded and the snapshot is gone */
+        final FHEMModel dry = model("dry");
+        RuleChecker.getInstance().evaluate(dry, rules.getPath());
+        assert dry.getSnapshots().isEmpty();
+        assert dry.getHistory().getEvents().size() == 1;
+
+        /* the model which was evaluated first still shows the state at that time */
+        assert wet.getSnapshots().size() == 1;
+        assert wet.getSnapshots().get(0).getRuleName().equals("dry");
+        assert wet.getHistory().getEvents().isEmpty();
+    }
+
+    private static FHEMModel model(String reading) {
+        final HashMap<String, String> meta = new HashMap<>();
+        meta.put("Reading", reading);
+        final FHEMRoom room = new FHEMRoom("room_test");
+        room.addSensor(new FHEMSensor(10, 20, "Rain", "Rain", "Rain", "Rain", "Rain",
+                Collections.singletonList("permission0"), true, meta, ""));
+        return new FHEMModel(new HashSet<>(Collections.singletonList(room)));
+    }
+}
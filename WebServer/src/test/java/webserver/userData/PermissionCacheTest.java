@@ -0,0 +1,86 @@
+package webserver.userData;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * This class contains tests for the cache of permissions and groups.
+ */
+public class PermissionCacheTest {
+    private static final List<String> PERMISSIONS = Arrays.asList("S_Licht", "E_Änderung");
+    private static final List<String> GROUPS = Collections.singletonList("Hausmeister");
+
+    @Test
+    public void testLookup() {
+        final PermissionCache cache = new PermissionCache(60 * 1000, 10);
+        assert !cache.getPermissions("alice").isPresent();
+        cache.putPermissions("alice", PERMISSIONS, cache.getEpoch());
+        cache.putGroups("alice", GROUPS, cache.getEpoch());
+        assert cache.getPermissions("alice").equals(Optional.of(PERMISSIONS));
+        assert cache.getGroups("alice").equals(Optional.of(GROUPS));
+        assert !cache.getGroups("bob").isPresent();
+        assert cache.getHits() == 2;
+        assert cache.getMisses() == 2;
+        assert cache.getHitRate() == 0.5;
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final PermissionCache cache = new PermissionCache(50, 10);
+        cache.putPermissions("alice", PERMISSIONS, cache.getEpoch());
+        assert cache.getPermissions("alice").isPresent();
+        Thread.sleep(100);
+        assert !cache.getPermissions("alice").isPresent();
+        /* the expired entry was dropped */
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        final PermissionCache cache = new PermissionCache(60 * 1000, 2);
+        cache.putPermissions("alice", PERMISSIONS, cache.getEpoch());
+        cache.putPermissions("bob", PERMISSIONS, cache.getEpoch());
+        /* alice was used more recently than bob */
+        assert cache.getPermissions("alice").isPresent();
+        cache.putPermissions("carol", PERMISSIONS, cache.getEpoch());
+        assert cache.size() == 2;
+        assert cache.getEvictions() == 1;
+        assert cache.getPermissions("alice").isPresent();
+        assert !cache.getPermissions("bob").isPresent();
+        assert cache.getPermissions("carol").isPresent();
+    }
+
+    @Test
+    public void testInvalidation() {
+        final PermissionCache cache = new PermissionCache(60 * 1000, 10);
+        cache.putPermissions("alice", PERMISSIONS, cache.getEpoch());
+        cache.putGroups("alice", GROUPS, cache.getEpoch());
+        cache.putPermissions("bob", PERMISSIONS, cache.getEpoch());
+        cache.invalidate("alice");
+        assert !cache.getPermissions("alice").isPresent();
+        assert !cache.getGroups("alice").isPresent();
+        assert cache.getPermissions("bob").isPresent();
+        cache.invalidateAll();
+        assert !cache.getPermissions("bob").isPresent();
+        assert cache.getInvalidations() == 2;
+    }
+
+    @Test
+    public void testStalePutAfterInvalidation() {
+        final PermissionCache cache = new PermissionCache(60 * 1000, 10);
+        /* a lookup starts, then the permissions of the user are changed before its result is stored */
+        final long epoch = cache.getEpoch();
+        cache.invalidate("alice");
+        cache.putPermissions("alice", PERMISSIONS, epoch);
+        cache.putGroups("alice", GROUPS, epoch);
+        assert !cache.getPermissions("alice").isPresent();
+        assert !cache.getGroups("alice").isPresent();
+        /* a lookup which started afterwards is stored */
+        cache.putPermissions("alice", PERMISSIONS, cache.getEpoch());
+        assert cache.getPermissions("alice").isPresent();
+    }
+}
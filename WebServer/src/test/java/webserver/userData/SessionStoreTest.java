@@ -0,0 +1,69 @@
+package webserver.userData;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+/**
+ * This class contains tests for the store of session tokens.
+ */
+public class SessionStoreTest {
+
+    @Test
+    public void testCreateToken() {
+        final SessionStore store = new SessionStore(60 * 1000);
+        final long before = System.currentTimeMillis();
+        final String token = store.createToken("alice");
+        final String other = store.createToken("alice");
+        assert !token.equals(other);
+        assert store.getUsername(token).equals(Optional.of("alice"));
+        assert store.getUsername(other).equals(Optional.of("alice"));
+        assert !store.getUsername("unknown").isPresent();
+        assert store.getExpiry(token).get() >= before + 60 * 1000;
+        assert !store.getExpiry("unknown").isPresent();
+        assert store.size() == 2;
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        final SessionStore store = new SessionStore(50);
+        final String token = store.createToken("alice");
+        assert store.getUsername(token).isPresent();
+        Thread.sleep(100);
+        assert !store.getUsername(token).isPresent();
+        /* the expired session was removed on access */
+        assert store.size() == 0;
+    }
+
+    @Test
+    public void testRevoke() {
+        final SessionStore store = new SessionStore(60 * 1000);
+        final String token = store.createToken("alice");
+        final String other = store.createToken("alice");
+        final String bobs = store.createToken("bob");
+        store.revoke(token);
+        assert !store.getUsername(token).isPresent();
+        assert store.getUsername(other).isPresent();
+        store.revokeAll("alice");
+        assert !store.getUsername(other).isPresent();
+        assert store.getUsername(bobs).equals(Optional.of("bob"));
+        assert store.size() == 1;
+    }
+
+    @Test
+    public void testPurgeExpired() throws InterruptedException {
+        final SessionStore shortLived = new SessionStore(50);
+        shortLived.createToken("alice");
+        shortLived.createToken("bob");
+        shortLived.purgeExpired();
+        assert shortLived.size() == 2;
+        Thread.sleep(100);
+        shortLived.purgeExpired();
+        assert shortLived.size() == 0;
+
+        final SessionStore longLived = new SessionStore(60 * 1000);
+        final String token = longLived.createToken("alice");
+        longLived.purgeExpired();
+        assert longLived.getUsername(token).isPresent();
+    }
+}